@@ -0,0 +1,229 @@
+package world;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.math.Vector3f;
+import com.jme3.system.JmeContext;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import world.core.TileStore;
+import world.core.World;
+
+/**
+ * Pre-generates a rectangular region of tiles into a TileStore, so a World with
+ * that store set doesn't have to generate them at runtime.
+ *
+ * Tiles that already exist in the store are skipped, so an interrupted bake can
+ * simply be run again with the same arguments to resume it. Tiles baked with other
+ * generator settings are baked again.
+ *
+ * Usage: Bake worldClass minX minZ maxX maxZ outputDir [patchSize blockSize worldHeight worldScale]
+ */
+public class Bake extends SimpleApplication
+{
+    private final String worldClass;
+    private final int minX, minZ, maxX, maxZ;
+    private final File outputDir;
+    private final int patchSize, blockSize, worldScale;
+    private final float worldHeight;
+
+    private final AtomicInteger baked = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public static void main(String[] args)
+    {
+        if (args.length != 6 && args.length != 10)
+        {
+            System.err.println("Usage: Bake worldClass minX minZ maxX maxZ outputDir [patchSize blockSize worldHeight worldScale]");
+            System.exit(1);
+        }
+
+        Bake app = new Bake(args);
+        app.setShowSettings(false);
+        app.start(JmeContext.Type.Headless);
+    }
+
+    public Bake(String[] args)
+    {
+        this.worldClass = args[0];
+        this.minX = Math.min(Integer.parseInt(args[1]), Integer.parseInt(args[3]));
+        this.minZ = Math.min(Integer.parseInt(args[2]), Integer.parseInt(args[4]));
+        this.maxX = Math.max(Integer.parseInt(args[1]), Integer.parseInt(args[3]));
+        this.maxZ = Math.max(Integer.parseInt(args[2]), Integer.parseInt(args[4]));
+        this.outputDir = new File(args[5]);
+
+        // the same defaults as Main.
+        this.patchSize = args.length > 6 ? Integer.parseInt(args[6]) : 65;
+        this.blockSize = args.length > 6 ? Integer.parseInt(args[7]) : 129;
+        this.worldHeight = args.length > 6 ? Float.parseFloat(args[8]) : 256f;
+        this.worldScale = args.length > 6 ? Integer.parseInt(args[9]) : 1;
+    }
+
+    @Override
+    public void simpleInitApp()
+    {
+        World world = null;
+
+        try
+        {
+            world = createWorld();
+
+            // the default generates nothing, don't fail every tile one by one.
+            if (world.getClass().getMethod("generateHeightmap", Vector3f.class).getDeclaringClass() == World.class)
+            {
+                System.err.println(worldClass + " cannot bake heightmaps, it has to override World.generateHeightmap.");
+                return;
+            }
+
+            bake(world, new TileStore(outputDir, blockSize, world.getGeneratorFingerprint()));
+        }
+        catch (Exception ex)
+        {
+            System.err.println("Bake failed: " + ex);
+            ex.printStackTrace();
+        }
+        finally
+        {
+            if (world != null) world.close();
+            this.stop();
+        }
+    }
+
+    private World createWorld() throws Exception
+    {
+        Class<? extends World> type = Class.forName(worldClass).asSubclass(World.class);
+
+        return type.getConstructor(SimpleApplication.class, int.class, int.class, float.class, int.class)
+                .newInstance(this, patchSize, blockSize, worldHeight, worldScale);
+    }
+
+    private void bake(World world, TileStore store)
+    {
+        final int total = (maxX - minX + 1) * (maxZ - minZ + 1);
+        final long start = System.nanoTime();
+
+        System.out.println(String.format(Locale.ROOT, "Baking %d tiles (%d,%d)-(%d,%d) of %s into %s",
+                total, minX, minZ, maxX, maxZ, worldClass, outputDir.getAbsolutePath()));
+
+        // report progress once a second while the pool does the work.
+        ScheduledThreadPoolExecutor reporter = new ScheduledThreadPoolExecutor(1);
+        reporter.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                report(total, start);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        try
+        {
+            pool.invoke(new BakeTask(world, store, minX, minZ, maxX, maxZ));
+        }
+        finally
+        {
+            pool.shutdown();
+            reporter.shutdownNow();
+        }
+
+        report(total, start);
+
+        if (failed.get() > 0)
+            System.out.println(failed.get() + " tiles failed, run the bake again to retry them.");
+    }
+
+    private void report(int total, long start)
+    {
+        int done = baked.get() + skipped.get() + failed.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double tilesPerSecond = seconds > 0 ? baked.get() / seconds : 0;
+
+        System.out.println(String.format(Locale.ROOT, "%d/%d tiles (%.1f%%), %d baked, %d already stored, %d failed - %.2f tiles/s, %.0f samples/s",
+                done, total, done * 100.0 / total, baked.get(), skipped.get(), failed.get(),
+                tilesPerSecond, tilesPerSecond * blockSize * blockSize));
+    }
+
+    private class BakeTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final World world;
+        private final TileStore store;
+        private final int x0, z0, x1, z1;
+
+        BakeTask(World world, TileStore store, int x0, int z0, int x1, int z1)
+        {
+            this.world = world;
+            this.store = store;
+            this.x0 = x0; this.z0 = z0;
+            this.x1 = x1; this.z1 = z1;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (x0 == x1 && z0 == z1)
+            {
+                bakeTile(x0, z0);
+                return;
+            }
+
+            // split along the longest side so the pieces stay roughly square.
+            if (x1 - x0 >= z1 - z0)
+            {
+                int mid = (x0 + x1) >> 1;
+                invokeAll(new BakeTask(world, store, x0, z0, mid, z1), new BakeTask(world, store, mid + 1, z0, x1, z1));
+            }
+            else
+            {
+                int mid = (z0 + z1) >> 1;
+                invokeAll(new BakeTask(world, store, x0, z0, x1, mid), new BakeTask(world, store, x0, mid + 1, x1, z1));
+            }
+        }
+
+        private void bakeTile(int x, int z)
+        {
+            // already baked by a previous (possibly interrupted) run.
+            if (store.contains(x, z))
+            {
+                skipped.incrementAndGet();
+                return;
+            }
+
+            try
+            {
+                // only the heights are stored, no quad or collision shape has to be built for them.
+                float[] heightmap = world.generateHeightmap(new Vector3f(x, 0, z));
+
+                if (heightmap == null)
+                {
+                    System.err.println("No heightmap generated for tile " + x + "," + z);
+                    failed.incrementAndGet();
+                    return;
+                }
+
+                store.write(x, z, heightmap);
+                baked.incrementAndGet();
+            }
+            catch (IOException ex)
+            {
+                System.err.println("Unable to store tile " + x + "," + z + ": " + ex);
+                failed.incrementAndGet();
+            }
+            catch (RuntimeException ex)
+            {
+                // one bad tile shouldn't abort the rest of the bake.
+                System.err.println("Unable to generate tile " + x + "," + z + ": " + ex);
+                failed.incrementAndGet();
+            }
+        }
+    }
+}
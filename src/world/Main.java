@@ -2,10 +2,21 @@ package world;
 
 import com.jme3.app.SimpleApplication;
 import com.jme3.bullet.BulletAppState;
+import com.jme3.collision.CollisionResults;
+import com.jme3.input.MouseInput;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.MouseButtonTrigger;
 import com.jme3.light.AmbientLight;
 import com.jme3.light.DirectionalLight;
 import com.jme3.math.ColorRGBA;
+import com.jme3.math.Ray;
 import com.jme3.math.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import world.core.TerrainEdit;
+import world.core.TileStore;
 import world.core.World;
 import world.examples.Example_NoiseHeightMap;
 
@@ -63,9 +74,48 @@ public class Main extends SimpleApplication
         // Default uses Runtime.getRuntime().availableProcessors()
         // world.setThreadPoolCount(2);
         
+        // remember where we were and what we could see, so the next launch can pick up from there.
+        world.setSnapshotFile(new File("world.snapshot"));
+        
+        // keep every crater we make, see below.
+        world.setJournalFile(new File("world.journal"));
+        
+        // use tiles pre-generated by world.Bake, if there are any, instead of generating them at runtime.
+        File baked = new File("baked");
+        
+        if (baked.isDirectory())
+        {
+            try
+            {
+                world.setTileStore(new TileStore(baked, blockSize, world.getGeneratorFingerprint()));
+            }
+            catch (IOException ex)
+            {
+                Logger.getLogger(Main.class.getName()).log(Level.WARNING, "Unable to open baked tiles: " + baked, ex);
+            }
+        }
+        
         // Finally, attach to the state manager so we can monitor movement or the camera,
         // which we use to determine when terrain should be added and removed from the scene.
         stateManager.attach(world);
+        
+        // click to blow a crater in the terrain we're looking at.
+        inputManager.addMapping("Crater", new MouseButtonTrigger(MouseInput.BUTTON_LEFT));
+        inputManager.addListener(new ActionListener()
+        {
+            public void onAction(String name, boolean isPressed, float tpf)
+            {
+                if (isPressed || !hasJoined) return;
+                
+                CollisionResults results = new CollisionResults();
+                rootNode.collideWith(new Ray(cam.getLocation(), cam.getDirection()), results);
+                
+                if (results.size() == 0) return;
+                
+                Vector3f point = results.getClosestCollision().getContactPoint();
+                world.deformTerrain(new TerrainEdit(point.getX(), point.getZ(), 24, -12));
+            }
+        }, "Crater");
     }
     
     private boolean hasJoined = false;
@@ -77,7 +127,8 @@ public class Main extends SimpleApplication
         // In this case, we'll just move the camera to a better position.
         if (world == null || world.isLoaded() == false || hasJoined) return;
         
-        this.getCamera().setLocation(new Vector3f(0, 250, 0));
+        // a restored world has already put the camera back where the player left off.
+        if (!world.isRestored()) this.getCamera().setLocation(new Vector3f(0, 250, 0));
         this.hasJoined = true;
     }
 
@@ -0,0 +1,332 @@
+package world;
+
+import com.jme3.terrain.noise.ShaderUtils;
+import com.jme3.terrain.noise.basis.FilteredBasis;
+import com.jme3.terrain.noise.filter.IterativeFilter;
+import com.jme3.terrain.noise.filter.OptimizedErode;
+import com.jme3.terrain.noise.filter.PerturbFilter;
+import com.jme3.terrain.noise.filter.SmoothFilter;
+import com.jme3.terrain.noise.fractal.FractalSum;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import world.core.noise.FractalNoise;
+import world.core.noise.NoiseEngine;
+import world.core.noise.NoiseModulator;
+
+/**
+ * Compares the NoiseEngine against the jME FilteredBasis it replaces: checks the
+ * compatible mode gives the same heightmaps, and times both. Then checks that
+ * sharing aprons between neighbouring tiles changes nothing but the time taken,
+ * and that neighbouring tiles match along their edges. Last, measures what
+ * interpolating the low octaves from a coarse lattice saves, and costs in error,
+ * with the settings of Example_NoiseHeightMap.
+ *
+ * Usage: NoiseBenchmark [tiles blockSize]
+ */
+public class NoiseBenchmark
+{
+    // PerturbFilter logs every tile it filters. Held here so the level isn't lost to gc.
+    private static final Logger PERTURB_LOGGER = Logger.getLogger(PerturbFilter.class.getName());
+
+    public static void main(String[] args)
+    {
+        int tiles = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int blockSize = args.length > 1 ? Integer.parseInt(args[1]) : 129;
+
+        PERTURB_LOGGER.setLevel(Level.WARNING);
+
+        FilteredBasis basis = createFilteredBasis();
+        NoiseEngine engine = createEngine(NoiseEngine.Mode.COMPATIBLE);
+        float[] heightmap = new float[blockSize * blockSize];
+
+        // same output...
+        float maxError = 0;
+
+        for (int i = 0; i < tiles; i++)
+        {
+            int x = (i % 8) - 4, z = (i / 8) - 4;
+            float sx = x * (blockSize - 1), sz = z * (blockSize - 1);
+
+            float[] expected = basis.getBuffer(sx, sz, 0, blockSize).array();
+            engine.getBuffer(heightmap, sx, sz, 0, blockSize);
+
+            for (int j = 0; j < heightmap.length; j++)
+                maxError = Math.max(maxError, Math.abs(expected[j] - heightmap[j]));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "Filtered, %d tiles of %d: max difference %g", tiles, blockSize, maxError));
+
+        // ...in less time.
+        for (int pass = 0; pass < 3; pass++)
+        {
+            long jme = System.nanoTime();
+
+            for (int i = 0; i < tiles; i++)
+                basis.getBuffer(i * (blockSize - 1), 0, 0, blockSize);
+
+            jme = System.nanoTime() - jme;
+
+            long ours = System.nanoTime();
+
+            for (int i = 0; i < tiles; i++)
+                engine.getBuffer(heightmap, i * (blockSize - 1), 0, 0, blockSize);
+
+            ours = System.nanoTime() - ours;
+
+            report("Filtered", tiles, blockSize, jme, ours);
+        }
+
+        // and the fractal on its own, 8 octaves.
+        FractalSum jmeFractal = new FractalSum();
+        jmeFractal.setOctaves(8);
+        jmeFractal.setScale(0.02125f);
+
+        final FractalNoise fractal = new FractalNoise().setOctaves(8).setScale(0.02125f);
+        NoiseEngine plain = new NoiseEngine(fractal, NoiseEngine.Mode.COMPATIBLE);
+
+        for (int pass = 0; pass < 3; pass++)
+        {
+            long jme = System.nanoTime();
+
+            for (int i = 0; i < tiles; i++)
+                jmeFractal.getBuffer(i * (blockSize - 1), 0, 0, blockSize);
+
+            jme = System.nanoTime() - jme;
+
+            long ours = System.nanoTime();
+
+            for (int i = 0; i < tiles; i++)
+                plain.getBuffer(heightmap, i * (blockSize - 1), 0, 0, blockSize);
+
+            ours = System.nanoTime() - ours;
+
+            report("Fractal (" + fractal.getOctaveCount() + " octaves)", tiles, blockSize, jme, ours);
+        }
+
+        benchmarkAprons(tiles, blockSize);
+        benchmarkLowOctaves(tiles, blockSize);
+    }
+
+    private static void benchmarkLowOctaves(int tiles, int blockSize)
+    {
+        int side = Math.max(1, (int)Math.sqrt(tiles));
+
+        FractalNoise exactFractal = createExampleFractal(false);
+        FractalNoise cachedFractal = createExampleFractal(true);
+
+        NoiseEngine[] fractals =
+        {
+            new NoiseEngine(exactFractal, NoiseEngine.Mode.ALIGNED),
+            new NoiseEngine(cachedFractal, NoiseEngine.Mode.ALIGNED)
+        };
+
+        NoiseEngine[] filtered =
+        {
+            createExampleEngine(createExampleFractal(false)),
+            createExampleEngine(createExampleFractal(true))
+        };
+
+        System.out.println(String.format(Locale.ROOT, "Low octaves: %d of %d interpolated",
+                cachedFractal.getCachedOctaveCount(blockSize), cachedFractal.getOctaveCount()));
+
+        compareLowOctaves("Low octaves, fractal", fractals, side, blockSize);
+        compareLowOctaves("Low octaves, filtered", filtered, side, blockSize);
+    }
+
+    // engines[0] evaluates every octave, engines[1] interpolates the low ones.
+    private static void compareLowOctaves(String name, NoiseEngine[] engines, int side, int blockSize)
+    {
+        float[][][] heightmaps = new float[2][side * side][blockSize * blockSize];
+        long[] times = new long[2];
+
+        for (int pass = 0; pass < 3; pass++)
+        {
+            for (int e = 0; e < 2; e++)
+            {
+                long start = System.nanoTime();
+
+                for (int i = 0; i < side * side; i++)
+                    engines[e].getBuffer(heightmaps[e][i], (i % side) * (blockSize - 1), (i / side) * (blockSize - 1), 0, blockSize);
+
+                times[e] = System.nanoTime() - start;
+            }
+        }
+
+        float maxError = 0;
+        double sumError = 0;
+
+        for (int i = 0; i < side * side; i++)
+        {
+            for (int j = 0; j < blockSize * blockSize; j++)
+            {
+                float error = Math.abs(heightmaps[0][i][j] - heightmaps[1][i][j]);
+                maxError = Math.max(maxError, error);
+                sumError += error;
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%s, %d tiles of %d: exact %.1f ms, interpolated %.1f ms, %.1fx, max error %g, mean error %g",
+                name, side * side, blockSize, times[0] / 1e6, times[1] / 1e6, (double)times[0] / times[1],
+                maxError, sumError / ((double)side * side * blockSize * blockSize)));
+    }
+
+    // the generator Example_NoiseHeightMap uses.
+    private static FractalNoise createExampleFractal(boolean lowOctaves)
+    {
+        FractalNoise base = new FractalNoise()
+                .setRoughness(0.7f)
+                .setFrequency(1.0f)
+                .setAmplitude(1.0f)
+                .setLacunarity(3.12f)
+                .setOctaves(8)
+                .setScale(0.015f)
+                .addModulator(new NoiseModulator()
+                    {
+                        @Override public float modulate(float value)
+                        {
+                            return ShaderUtils.clamp(value * 0.5f + 0.5f, 0, 1);
+                        }
+                    });
+
+        if (lowOctaves)
+            base.setLowOctaveCache(8, 32, 64, 0.001f);
+
+        return base;
+    }
+
+    private static NoiseEngine createExampleEngine(FractalNoise base)
+    {
+        return new NoiseEngine(base, NoiseEngine.Mode.ALIGNED)
+                .setPerturb(0.119f)
+                .setErode(5, 0.011f, 1)
+                .setSmooth(1, 0.7f)
+                .setApronCache(256);
+    }
+
+    // a square of tiles, generated row by row the way they stream in.
+    private static void benchmarkAprons(int tiles, int blockSize)
+    {
+        int side = Math.max(1, (int)Math.sqrt(tiles));
+
+        NoiseEngine isolated = createEngine(NoiseEngine.Mode.ALIGNED);
+        NoiseEngine shared = createEngine(NoiseEngine.Mode.ALIGNED).setApronCache(side * 4 + 8);
+
+        float[][] expected = new float[side * side][blockSize * blockSize];
+        float[][] heightmaps = new float[side * side][blockSize * blockSize];
+
+        for (int pass = 0; pass < 3; pass++)
+        {
+            // a fresh cache each pass, so every apron is generated once per pass.
+            shared.setApronCache(side * 4 + 8);
+
+            long alone = System.nanoTime();
+
+            for (int i = 0; i < side * side; i++)
+                isolated.getBuffer(expected[i], (i % side) * (blockSize - 1), (i / side) * (blockSize - 1), 0, blockSize);
+
+            alone = System.nanoTime() - alone;
+
+            long together = System.nanoTime();
+
+            for (int i = 0; i < side * side; i++)
+                shared.getBuffer(heightmaps[i], (i % side) * (blockSize - 1), (i / side) * (blockSize - 1), 0, blockSize);
+
+            together = System.nanoTime() - together;
+
+            System.out.println(String.format(Locale.ROOT, "Aprons, %d tiles of %d (margin %d): isolated %.1f ms, shared %.1f ms, %.1fx",
+                    side * side, blockSize, isolated.getMargin(blockSize), alone / 1e6, together / 1e6, (double)alone / together));
+        }
+
+        float maxError = 0, maxSeam = 0;
+
+        for (int i = 0; i < side * side; i++)
+        {
+            for (int j = 0; j < blockSize * blockSize; j++)
+                maxError = Math.max(maxError, Math.abs(expected[i][j] - heightmaps[i][j]));
+
+            int x = i % side, z = i / side;
+
+            for (int k = 0; k < blockSize; k++)
+            {
+                if (x + 1 < side)
+                    maxSeam = Math.max(maxSeam, Math.abs(heightmaps[i][k * blockSize + blockSize - 1] - heightmaps[i + 1][k * blockSize]));
+
+                if (z + 1 < side)
+                    maxSeam = Math.max(maxSeam, Math.abs(heightmaps[i][(blockSize - 1) * blockSize + k] - heightmaps[i + side][k]));
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "Aprons: max difference %g, max seam difference %g", maxError, maxSeam));
+    }
+
+    private static void report(String name, int tiles, int blockSize, long jme, long ours)
+    {
+        System.out.println(String.format(Locale.ROOT, "%s, %d tiles of %d: jME %.1f ms, engine %.1f ms, %.1fx",
+                name, tiles, blockSize, jme / 1e6, ours / 1e6, (double)jme / ours));
+    }
+
+    // the generator Example_NoiseHeightMap used before it moved to the NoiseEngine.
+    private static FilteredBasis createFilteredBasis()
+    {
+        FractalSum base = new FractalSum();
+        base.setRoughness(0.7f);
+        base.setFrequency(1.0f);
+        base.setAmplitude(1.0f);
+        base.setLacunarity(3.12f);
+        base.setOctaves(8);
+        base.setScale(0.02125f);
+        base.addModulator(new com.jme3.terrain.noise.modulator.NoiseModulator()
+            {
+                @Override public float value(float... in)
+                {
+                    return ShaderUtils.clamp(in[0] * 0.5f + 0.5f, 0, 1);
+                }
+            });
+
+        FilteredBasis ground = new FilteredBasis(base);
+        PerturbFilter perturb = new PerturbFilter();
+        perturb.setMagnitude(0.119f);
+
+        OptimizedErode therm = new OptimizedErode();
+        therm.setRadius(5);
+        therm.setTalus(0.011f);
+
+        SmoothFilter smooth = new SmoothFilter();
+        smooth.setRadius(1);
+        smooth.setEffect(0.7f);
+
+        IterativeFilter iterate = new IterativeFilter();
+        iterate.addPreFilter(perturb);
+        iterate.addPostFilter(smooth);
+        iterate.setFilter(therm);
+        iterate.setIterations(1);
+
+        ground.addPreFilter(iterate);
+
+        return ground;
+    }
+
+    private static NoiseEngine createEngine(NoiseEngine.Mode mode)
+    {
+        FractalNoise base = new FractalNoise()
+                .setRoughness(0.7f)
+                .setFrequency(1.0f)
+                .setAmplitude(1.0f)
+                .setLacunarity(3.12f)
+                .setOctaves(8)
+                .setScale(0.02125f)
+                .addModulator(new NoiseModulator()
+                    {
+                        @Override public float modulate(float value)
+                        {
+                            return ShaderUtils.clamp(value * 0.5f + 0.5f, 0, 1);
+                        }
+                    });
+
+        return new NoiseEngine(base, mode)
+                .setPerturb(0.119f)
+                .setErode(5, 0.011f, 1)
+                .setSmooth(1, 0.7f);
+    }
+}
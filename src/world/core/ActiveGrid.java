@@ -0,0 +1,233 @@
+package world.core;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tiles inside the view window, held in a fixed-size toroidal grid.
+ *
+ * A tile lives in the cell at its location modulo the window size, so every
+ * location inside the window has a cell of its own. When the window moves, the
+ * locations that leave it share their cells with the ones that enter it, and only
+ * that strip along the edges is visited.
+ */
+final class ActiveGrid
+{
+    private int width, depth;
+    private int originX, originZ;
+    private boolean hasOrigin;
+
+    private Vector3f[] locations;
+    private Node[] items;
+    private int size;
+
+    // tiles left over from a resize, placed again on the next move.
+    private final List<Vector3f> orphanLocations = new ArrayList<Vector3f>();
+    private final List<Node> orphanItems = new ArrayList<Node>();
+
+    ActiveGrid(int width, int depth)
+    {
+        this.width = width;
+        this.depth = depth;
+        this.locations = new Vector3f[width * depth];
+        this.items = new Node[width * depth];
+    }
+
+    synchronized int size() { return this.size; }
+
+    synchronized boolean hasOrigin() { return this.hasOrigin; }
+    synchronized int getOriginX() { return this.originX; }
+    synchronized int getOriginZ() { return this.originZ; }
+
+    private int cell(int x, int z)
+    {
+        int cx = x % width, cz = z % depth;
+
+        if (cx < 0) cx += width;
+        if (cz < 0) cz += depth;
+
+        return cz * width + cx;
+    }
+
+    private boolean inside(int x, int z, int fromX, int fromZ)
+    {
+        return x >= fromX && x < fromX + width && z >= fromZ && z < fromZ + depth;
+    }
+
+    synchronized boolean contains(Vector3f location)
+    {
+        return hasOrigin && inside((int)location.getX(), (int)location.getZ(), originX, originZ);
+    }
+
+    synchronized Node get(Vector3f location)
+    {
+        if (!contains(location))
+            return null;
+
+        return items[cell((int)location.getX(), (int)location.getZ())];
+    }
+
+    synchronized void put(Vector3f location, Node item)
+    {
+        if (!contains(location))
+            throw new IllegalArgumentException("Location is outside the view window: " + location);
+
+        int cell = cell((int)location.getX(), (int)location.getZ());
+
+        if (items[cell] == null)
+            size++;
+
+        locations[cell] = location;
+        items[cell] = item;
+    }
+
+    // a copy of every tile in the grid.
+    synchronized Map<Vector3f, Node> getItems()
+    {
+        Map<Vector3f, Node> result = new LinkedHashMap<Vector3f, Node>();
+
+        for (int i = 0; i < items.length; i++)
+        {
+            if (items[i] != null)
+                result.put(locations[i], items[i]);
+        }
+
+        return result;
+    }
+
+    // changes the window size. The tiles are placed again on the next move.
+    synchronized void resize(int width, int depth)
+    {
+        if (width == this.width && depth == this.depth)
+            return;
+
+        takeAll(orphanLocations, orphanItems);
+
+        this.width = width;
+        this.depth = depth;
+        this.locations = new Vector3f[width * depth];
+        this.items = new Node[width * depth];
+        this.hasOrigin = false;
+    }
+
+    private void takeAll(List<Vector3f> takenLocations, List<Node> takenItems)
+    {
+        for (int i = 0; i < items.length; i++)
+        {
+            if (items[i] != null)
+            {
+                takenLocations.add(locations[i]);
+                takenItems.add(items[i]);
+
+                locations[i] = null;
+                items[i] = null;
+            }
+        }
+
+        size = 0;
+    }
+
+    /**
+     * Moves the window so its top left tile is at (x, z). The tiles that are no longer
+     * inside it are taken out of the grid and added to leavingLocations/leavingItems,
+     * and the locations that came into view are added to entering.
+     */
+    synchronized void move(int x, int z, List<Vector3f> leavingLocations, List<Node> leavingItems, List<Vector3f> entering)
+    {
+        if (hasOrigin && x == originX && z == originZ)
+            return;
+
+        int oldX = originX, oldZ = originZ;
+        boolean jump = !hasOrigin || Math.abs(x - oldX) >= width || Math.abs(z - oldZ) >= depth;
+
+        if (jump)
+        {
+            // nothing is shared with the old window, or there wasn't one, so visit everything.
+            List<Vector3f> takenLocations = new ArrayList<Vector3f>(orphanLocations);
+            List<Node> takenItems = new ArrayList<Node>(orphanItems);
+            orphanLocations.clear();
+            orphanItems.clear();
+            takeAll(takenLocations, takenItems);
+
+            originX = x;
+            originZ = z;
+            hasOrigin = true;
+
+            for (int i = 0; i < takenItems.size(); i++)
+            {
+                Vector3f location = takenLocations.get(i);
+
+                if (inside((int)location.getX(), (int)location.getZ(), x, z))
+                {
+                    put(location, takenItems.get(i));
+                }
+                else
+                {
+                    leavingLocations.add(location);
+                    leavingItems.add(takenItems.get(i));
+                }
+            }
+
+            for (int lx = x; lx < x + width; lx++)
+            {
+                for (int lz = z; lz < z + depth; lz++)
+                {
+                    if (items[cell(lx, lz)] == null)
+                        entering.add(new Vector3f(lx, 0, lz));
+                }
+            }
+
+            return;
+        }
+
+        // the strip that left, then the strip that entered in the cells it freed.
+        for (int lx = oldX; lx < oldX + width; lx++)
+        {
+            boolean columnKept = lx >= x && lx < x + width;
+
+            for (int lz = oldZ; lz < oldZ + depth; lz++)
+            {
+                if (columnKept && lz >= z && lz < z + depth)
+                {
+                    lz = z + depth - 1;
+                    continue;
+                }
+
+                int cell = cell(lx, lz);
+
+                if (items[cell] != null)
+                {
+                    leavingLocations.add(locations[cell]);
+                    leavingItems.add(items[cell]);
+
+                    locations[cell] = null;
+                    items[cell] = null;
+                    size--;
+                }
+            }
+        }
+
+        for (int lx = x; lx < x + width; lx++)
+        {
+            boolean columnKept = lx >= oldX && lx < oldX + width;
+
+            for (int lz = z; lz < z + depth; lz++)
+            {
+                if (columnKept && lz >= oldZ && lz < oldZ + depth)
+                {
+                    lz = oldZ + depth - 1;
+                    continue;
+                }
+
+                entering.add(new Vector3f(lx, 0, lz));
+            }
+        }
+
+        originX = x;
+        originZ = z;
+    }
+}
@@ -32,4 +32,6 @@ public interface IWorld
     
     Node getLoadedItem(Vector3f location);
     Node getCachedItem(Vector3f location);
+    
+    void deformTerrain(TerrainEdit edit);
 }
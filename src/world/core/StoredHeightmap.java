@@ -0,0 +1,21 @@
+package world.core;
+
+/**
+ * A heightmap read back from a TileStore or the last session's snapshot, with the
+ * number of terrain journal edits it already holds. Pass that position on to
+ * World.createTerrainQuad so only later edits are replayed over the heights.
+ */
+public class StoredHeightmap
+{
+    private final float[] heights;
+    private final int journalPosition;
+
+    public StoredHeightmap(float[] heights, int journalPosition)
+    {
+        this.heights = heights;
+        this.journalPosition = journalPosition;
+    }
+
+    public float[] getHeights() { return this.heights; }
+    public int getJournalPosition() { return this.journalPosition; }
+}
@@ -0,0 +1,58 @@
+package world.core;
+
+/**
+ * A change in terrain height over a circle in world space, such as a crater or a
+ * dug out hole. Edits are kept in the world's TerrainJournal.
+ */
+public class TerrainEdit
+{
+    public enum Falloff
+    {
+        // eases from the full delta at the centre to nothing at the radius, for craters and mounds.
+        SMOOTH,
+        // the full delta everywhere inside the radius, for digging.
+        NONE
+    }
+
+    private final float x, z, radius, delta;
+    private final Falloff falloff;
+
+    public TerrainEdit(float x, float z, float radius, float delta, Falloff falloff)
+    {
+        if (radius <= 0)
+            throw new IllegalArgumentException("Radius must be greater than zero.");
+
+        this.x = x;
+        this.z = z;
+        this.radius = radius;
+        this.delta = delta;
+        this.falloff = falloff;
+    }
+
+    public TerrainEdit(float x, float z, float radius, float delta)
+    {
+        this(x, z, radius, delta, Falloff.SMOOTH);
+    }
+
+    public float getX() { return this.x; }
+    public float getZ() { return this.z; }
+    public float getRadius() { return this.radius; }
+    public float getDelta() { return this.delta; }
+    public Falloff getFalloff() { return this.falloff; }
+
+    // the change in height, in world units, at the given world position.
+    public float getDelta(float worldX, float worldZ)
+    {
+        float dx = worldX - x, dz = worldZ - z;
+        float distanceSquared = (dx * dx + dz * dz) / (radius * radius);
+
+        if (distanceSquared >= 1f)
+            return 0;
+
+        if (falloff == Falloff.NONE)
+            return delta;
+
+        float t = 1f - distanceSquared;
+        return delta * t * t;
+    }
+}
@@ -0,0 +1,138 @@
+package world.core;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.terrain.geomipmap.TerrainPatch;
+import com.jme3.terrain.geomipmap.TerrainQuad;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes heights, normals, tangents and binormals straight into the existing buffers
+ * of a TerrainQuad's patches, where TerrainQuad.setHeight would allocate new ones.
+ * Tangents and binormals are derived from the normals the way jME's
+ * LODGeomap.writeTangentArray does, so normal mapped materials light them the same.
+ *
+ * LOD only swaps index buffers over the same vertices, so it follows the new heights
+ * without being rebuilt. LOD entropies are not regenerated, TerrainLodControl's
+ * default distance based calculator never reads them.
+ */
+final class TerrainHeights
+{
+    private TerrainHeights() { }
+
+    /**
+     * Copies the samples of heightmap from (minX, minZ) to (maxX, maxZ) inclusive into
+     * the quad. Only the patches overlapping that area are touched. Normals depend on
+     * neighbouring heights too, so grow the area by one sample around a change.
+     */
+    static void write(TerrainQuad quad, float[] heightmap, int minX, int minZ, int maxX, int maxZ)
+    {
+        int blockSize = quad.getTotalSize();
+        int halfBlock = (blockSize - 1) / 2;
+
+        minX = Math.max(minX, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, blockSize - 1);
+        maxZ = Math.min(maxZ, blockSize - 1);
+
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        quad.getAllTerrainPatches(patches);
+
+        Vector3f corner = new Vector3f();
+
+        for (TerrainPatch patch : patches)
+        {
+            // the position of the patch's first sample, measured from the centre of the quad.
+            quad.worldToLocal(patch.getWorldTranslation(), corner);
+            int offsetX = Math.round(corner.getX()) + halfBlock;
+            int offsetZ = Math.round(corner.getZ()) + halfBlock;
+
+            int size = patch.getSize();
+
+            int fromX = Math.max(minX - offsetX, 0), toX = Math.min(maxX - offsetX, size - 1);
+            int fromZ = Math.max(minZ - offsetZ, 0), toZ = Math.min(maxZ - offsetZ, size - 1);
+
+            if (fromX > toX || fromZ > toZ)
+                continue;
+
+            float[] patchHeights = patch.getHeightMap();
+            Mesh mesh = patch.getMesh();
+            FloatBuffer positions = mesh.getFloatBuffer(Type.Position);
+            FloatBuffer normals = mesh.getFloatBuffer(Type.Normal);
+            FloatBuffer tangents = mesh.getFloatBuffer(Type.Tangent);
+            FloatBuffer binormals = mesh.getFloatBuffer(Type.Binormal);
+
+            for (int z = fromZ; z <= toZ; z++)
+            {
+                int row = offsetZ + z;
+
+                for (int x = fromX; x <= toX; x++)
+                {
+                    int col = offsetX + x;
+                    int i = z * size + x;
+
+                    float height = heightmap[row * blockSize + col];
+                    patchHeights[i] = height;
+                    positions.put(i * 3 + 1, height);
+
+                    // central differences over the whole tile (one-sided on its border), so normals also match across patch edges.
+                    int left = Math.max(col - 1, 0), right = Math.min(col + 1, blockSize - 1);
+                    int up = Math.max(row - 1, 0), down = Math.min(row + 1, blockSize - 1);
+
+                    float nx = (heightmap[row * blockSize + left] - heightmap[row * blockSize + right]) / (right - left);
+                    float nz = (heightmap[up * blockSize + col] - heightmap[down * blockSize + col]) / (down - up);
+                    float invLength = 1f / (float)Math.sqrt(nx * nx + 1f + nz * nz);
+
+                    nx *= invLength;
+                    nz *= invLength;
+
+                    normals.put(i * 3, nx);
+                    normals.put(i * 3 + 1, invLength);
+                    normals.put(i * 3 + 2, nz);
+
+                    // normal x (0, 0, 1) and (1, 0, 0) x normal.
+                    if (tangents != null)
+                        putNormalized(tangents, i, invLength, -nx, 0);
+
+                    if (binormals != null)
+                        putNormalized(binormals, i, 0, -nz, invLength);
+                }
+            }
+
+            mesh.getBuffer(Type.Position).setUpdateNeeded();
+            mesh.getBuffer(Type.Normal).setUpdateNeeded();
+
+            if (tangents != null)
+                mesh.getBuffer(Type.Tangent).setUpdateNeeded();
+
+            if (binormals != null)
+                mesh.getBuffer(Type.Binormal).setUpdateNeeded();
+
+            // picking would still hit the old surface.
+            mesh.clearCollisionData();
+            patch.updateModelBound();
+        }
+    }
+
+    // as Vector3f.normalizeLocal, which leaves zero and unit vectors alone.
+    private static void putNormalized(FloatBuffer buffer, int vertex, float x, float y, float z)
+    {
+        float length = x * x + y * y + z * z;
+
+        if (length != 1f && length != 0f)
+        {
+            length = 1f / FastMath.sqrt(length);
+            x *= length;
+            y *= length;
+            z *= length;
+        }
+
+        buffer.put(vertex * 3, x);
+        buffer.put(vertex * 3 + 1, y);
+        buffer.put(vertex * 3 + 2, z);
+    }
+}
@@ -0,0 +1,265 @@
+package world.core;
+
+import com.jme3.math.Vector3f;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only log of every TerrainEdit made to a world, indexed by the tiles
+ * each edit touches.
+ *
+ * Modified tiles are never stored. Whenever a tile's heightmap is generated, read
+ * from a TileStore or taken from the cache, the edits touching it are replayed on
+ * top, so edits survive the tile being unloaded and rebuilt.
+ *
+ * Tiles are laid out as World.fromTerrainLocation places them: tile (x, z) is
+ * centred on (x, z) * (blockSize - 1) * worldScale, with samples worldScale apart.
+ * Heights are in world units, replay divides them by the vertical scale the
+ * world builds its quads with.
+ */
+public class TerrainJournal
+{
+    private static final int MAGIC = 0x574C444A; // "WLDJ"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 17;
+
+    private final int blockSize, worldScale;
+
+    private final List<TerrainEdit> edits = new ArrayList<TerrainEdit>();
+    private final Map<Vector3f, List<Integer>> tileEdits = new HashMap<Vector3f, List<Integer>>();
+
+    private DataOutputStream out;
+
+    public TerrainJournal(int blockSize, int worldScale)
+    {
+        this.blockSize = blockSize;
+        this.worldScale = worldScale;
+    }
+
+    public synchronized int size() { return this.edits.size(); }
+
+    public synchronized TerrainEdit get(int index) { return this.edits.get(index); }
+
+    /**
+     * Loads the edits already in the file, then appends every new edit to it.
+     * A record cut short by a crash is dropped.
+     */
+    public synchronized void open(File file) throws IOException
+    {
+        close();
+
+        if (file.isFile())
+        {
+            int count = 0;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            try
+            {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                    throw new IOException("Not a terrain journal: " + file);
+
+                while (true)
+                {
+                    TerrainEdit edit;
+
+                    try
+                    {
+                        edit = new TerrainEdit(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                                TerrainEdit.Falloff.values()[in.readByte()]);
+                    }
+                    catch (EOFException ex)
+                    {
+                        break;
+                    }
+
+                    addEdit(edit);
+                    count++;
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+
+            long length = HEADER_SIZE + (long)count * RECORD_SIZE;
+
+            if (file.length() > length)
+            {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+                try
+                {
+                    raf.setLength(length);
+                }
+                finally
+                {
+                    raf.close();
+                }
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        else
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+        }
+    }
+
+    /**
+     * Adds the edit and, if the journal has a file, writes it out. The edit is kept
+     * even if writing it fails.
+     */
+    public synchronized int append(TerrainEdit edit) throws IOException
+    {
+        int index = addEdit(edit);
+
+        if (out != null)
+        {
+            out.writeFloat(edit.getX());
+            out.writeFloat(edit.getZ());
+            out.writeFloat(edit.getRadius());
+            out.writeFloat(edit.getDelta());
+            out.writeByte(edit.getFalloff().ordinal());
+            out.flush();
+        }
+
+        return index;
+    }
+
+    private int addEdit(TerrainEdit edit)
+    {
+        int index = edits.size();
+        edits.add(edit);
+
+        for (Vector3f location : getTiles(edit))
+        {
+            List<Integer> indices = tileEdits.get(location);
+
+            if (indices == null)
+            {
+                indices = new ArrayList<Integer>();
+                tileEdits.put(location, indices);
+            }
+
+            indices.add(index);
+        }
+
+        return index;
+    }
+
+    // the locations of every tile the edit touches, including tiles that only share an edge sample with it.
+    public List<Vector3f> getTiles(TerrainEdit edit)
+    {
+        int span = blockSize - 1;
+        int half = span / 2;
+
+        float minX = (edit.getX() - edit.getRadius()) / worldScale, maxX = (edit.getX() + edit.getRadius()) / worldScale;
+        float minZ = (edit.getZ() - edit.getRadius()) / worldScale, maxZ = (edit.getZ() + edit.getRadius()) / worldScale;
+
+        int fromX = (int)Math.ceil((minX - half) / span), toX = (int)Math.floor((maxX + half) / span);
+        int fromZ = (int)Math.ceil((minZ - half) / span), toZ = (int)Math.floor((maxZ + half) / span);
+
+        List<Vector3f> tiles = new ArrayList<Vector3f>();
+
+        for (int x = fromX; x <= toX; x++)
+        {
+            for (int z = fromZ; z <= toZ; z++)
+                tiles.add(new Vector3f(x, 0, z));
+        }
+
+        return tiles;
+    }
+
+    /**
+     * Applies the edits with an index in [from, to) that touch the tile at the given
+     * location to its heightmap, whose quad is scaled vertically by heightScale.
+     * Returns the samples changed as { minX, minZ, maxX, maxZ }, or null if none were.
+     */
+    public synchronized int[] replay(Vector3f location, float[] heightmap, float heightScale, int from, int to)
+    {
+        List<Integer> indices = tileEdits.get(location);
+
+        if (indices == null)
+            return null;
+
+        int span = blockSize - 1;
+        int half = span / 2;
+
+        // the world position of the tile's first sample, in samples.
+        int originX = (int)location.getX() * span - half;
+        int originZ = (int)location.getZ() * span - half;
+
+        int[] changed = null;
+
+        for (int i = 0; i < indices.size(); i++)
+        {
+            int index = indices.get(i);
+
+            if (index < from || index >= to)
+                continue;
+
+            TerrainEdit edit = edits.get(index);
+
+            int minX = Math.max(0, (int)Math.ceil((edit.getX() - edit.getRadius()) / worldScale) - originX);
+            int maxX = Math.min(span, (int)Math.floor((edit.getX() + edit.getRadius()) / worldScale) - originX);
+            int minZ = Math.max(0, (int)Math.ceil((edit.getZ() - edit.getRadius()) / worldScale) - originZ);
+            int maxZ = Math.min(span, (int)Math.floor((edit.getZ() + edit.getRadius()) / worldScale) - originZ);
+
+            if (minX > maxX || minZ > maxZ)
+                continue;
+
+            for (int z = minZ; z <= maxZ; z++)
+            {
+                float worldZ = (originZ + z) * worldScale;
+
+                for (int x = minX; x <= maxX; x++)
+                {
+                    float delta = edit.getDelta((originX + x) * worldScale, worldZ);
+
+                    if (delta != 0)
+                        heightmap[z * blockSize + x] += delta / heightScale;
+                }
+            }
+
+            if (changed == null)
+            {
+                changed = new int[] { minX, minZ, maxX, maxZ };
+            }
+            else
+            {
+                changed[0] = Math.min(changed[0], minX);
+                changed[1] = Math.min(changed[1], minZ);
+                changed[2] = Math.max(changed[2], maxX);
+                changed[3] = Math.max(changed[3], maxZ);
+            }
+        }
+
+        return changed;
+    }
+
+    public synchronized void close() throws IOException
+    {
+        if (out != null)
+        {
+            out.close();
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package world.core;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+import com.jme3.terrain.geomipmap.TerrainQuad;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of detached TerrainQuads of one patchSize/blockSize.
+ *
+ * A recycled quad keeps its patch hierarchy and native vertex, normal, tangent and
+ * index buffers. Acquiring one rewrites the heights, normals and tangents of every
+ * patch straight into those buffers, see TerrainHeights.
+ */
+public class TerrainQuadPool
+{
+    // set on quads given up to the pool, kept or not, and cleared when one is handed out again.
+    private static final String RELEASED = "Released";
+
+    private final int patchSize, blockSize;
+    private volatile int capacity;
+
+    private final ConcurrentLinkedQueue<TerrainQuad> quads = new ConcurrentLinkedQueue<TerrainQuad>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public TerrainQuadPool(int patchSize, int blockSize, int capacity)
+    {
+        this.patchSize = patchSize;
+        this.blockSize = blockSize;
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() { return this.capacity; }
+    public void setCapacity(int capacity) { this.capacity = capacity; }
+
+    public int size() { return this.size.get(); }
+
+    public TerrainQuad acquire(String name, float[] heightmap)
+    {
+        TerrainQuad quad = quads.poll();
+
+        if (quad == null)
+            return new TerrainQuad(name, patchSize, blockSize, heightmap);
+
+        size.decrementAndGet();
+
+        quad.setUserData(RELEASED, null);
+        quad.setName(name);
+        rewriteHeights(quad, heightmap);
+
+        return quad;
+    }
+
+    private void rewriteHeights(TerrainQuad quad, float[] heightmap)
+    {
+        if (heightmap.length != blockSize * blockSize)
+            throw new IllegalArgumentException("Heightmap does not match the block size of this pool.");
+
+        TerrainHeights.write(quad, heightmap, 0, 0, blockSize - 1, blockSize - 1);
+    }
+
+    // returns false if the quad was not taken, either because it doesn't fit this pool or the pool is full.
+    public boolean release(TerrainQuad quad)
+    {
+        if (quad.getParent() != null)
+            return false;
+
+        // whoever still holds it must not use it, the pool may hand it out for another tile.
+        quad.setUserData(RELEASED, true);
+
+        if (quad.getPatchSize() != patchSize || quad.getTotalSize() != blockSize)
+            return false;
+
+        if (size.incrementAndGet() > capacity)
+        {
+            size.decrementAndGet();
+            return false;
+        }
+
+        quad.setLocalTranslation(Vector3f.ZERO);
+        quad.setLocalScale(Vector3f.UNIT_XYZ);
+        quad.clearCaches();
+
+        quads.offer(quad);
+
+        return true;
+    }
+
+    // true if the quad was given up to a pool and hasn't been handed out since.
+    public static boolean isReleased(Spatial quad)
+    {
+        return quad.getUserData(RELEASED) != null;
+    }
+
+    public void clear()
+    {
+        quads.clear();
+        size.set(0);
+    }
+}
@@ -0,0 +1,155 @@
+package world.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A persistent, file-per-tile store of generated heightmaps.
+ *
+ * Tiles are keyed by their terrain location (see World.toTerrainLocation) and
+ * written to a temporary file first, then renamed into place, so an interrupted
+ * write never leaves a partial tile behind.
+ *
+ * Every tile is stamped with the fingerprint of the generator that made it, see
+ * World.getGeneratorFingerprint. Tiles from another generator, or an older version
+ * of this format, are treated as missing so they are generated or baked again
+ * rather than placed next to different terrain.
+ */
+public class TileStore
+{
+    private static final int MAGIC = 0x574C4454; // "WLDT"
+    private static final int VERSION = 2;
+
+    private final File directory;
+    private final int blockSize;
+    private final long fingerprint;
+
+    public TileStore(File directory, int blockSize, long fingerprint) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create tile store directory: " + directory);
+
+        this.directory = directory;
+        this.blockSize = blockSize;
+        this.fingerprint = fingerprint;
+    }
+
+    public File getDirectory() { return this.directory; }
+    public int getBlockSize() { return this.blockSize; }
+    public long getFingerprint() { return this.fingerprint; }
+
+    private File getTileFile(int x, int z)
+    {
+        return new File(directory, "tile_" + x + "_" + z + ".hmap");
+    }
+
+    public boolean contains(int x, int z)
+    {
+        File file = getTileFile(x, z);
+
+        if (!file.isFile())
+            return false;
+
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            try
+            {
+                return readHeader(in, file);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException ex)
+        {
+            return false;
+        }
+    }
+
+    // false if the tile was stored by another generator or version, and has to be made again.
+    private boolean readHeader(DataInputStream in, File file) throws IOException
+    {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a tile file: " + file);
+
+        if (in.readInt() != VERSION)
+            return false;
+
+        if (in.readInt() != blockSize)
+            throw new IOException("Tile was stored with a different block size: " + file);
+
+        return in.readLong() == fingerprint;
+    }
+
+    // returns null if the tile has not been stored, or was stored by another generator.
+    public float[] read(int x, int z) throws IOException
+    {
+        File file = getTileFile(x, z);
+
+        if (!file.isFile())
+            return null;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+        try
+        {
+            if (!readHeader(in, file))
+                return null;
+
+            float[] heightmap = new float[blockSize * blockSize];
+
+            for (int i = 0; i < heightmap.length; i++)
+                heightmap[i] = in.readFloat();
+
+            return heightmap;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    public void write(int x, int z, float[] heightmap) throws IOException
+    {
+        if (heightmap.length != blockSize * blockSize)
+            throw new IllegalArgumentException("Heightmap does not match the block size of this store.");
+
+        File file = getTileFile(x, z);
+        File temp = new File(directory, file.getName() + ".tmp");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(blockSize);
+            out.writeLong(fingerprint);
+
+            for (int i = 0; i < heightmap.length; i++)
+                out.writeFloat(heightmap[i]);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        // a plain rename won't replace an existing file on every platform.
+        if (!temp.renameTo(file))
+        {
+            file.delete();
+
+            if (!temp.renameTo(file))
+                throw new IOException("Unable to move tile into place: " + file);
+        }
+    }
+}
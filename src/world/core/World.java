@@ -1,8 +1,15 @@
 package world.core;
 
+import com.jme3.app.Application;
 import com.jme3.app.SimpleApplication;
 import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
 import com.jme3.bullet.BulletAppState;
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.HeightfieldCollisionShape;
+import com.jme3.bullet.control.PhysicsControl;
+import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.queue.RenderQueue.ShadowMode;
 import com.jme3.scene.Node;
@@ -10,15 +17,25 @@ import com.jme3.scene.Spatial;
 import com.jme3.terrain.geomipmap.TerrainLodControl;
 import com.jme3.terrain.geomipmap.TerrainQuad;
 import java.io.Closeable;
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public abstract class World extends AbstractAppState implements IWorld, Closeable
 {
@@ -32,7 +49,7 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
             totalVisibleChunks = 25,
             worldScale = 1;
     
-    private boolean isLoaded = false;
+    private boolean isLoaded = false, isRestored = false;
     private volatile boolean cacheInterrupted = false;
     
     private int patchSize, blockSize;
@@ -45,7 +62,30 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
     private final Map<Vector3f, Node> itemsCache = new ConcurrentHashMap<Vector3f, Node>();
     
     private final ConcurrentLinkedQueue<Node> newItems = new ConcurrentLinkedQueue<Node>();
-    private final Map<Vector3f, Node> activeItems = new HashMap<Vector3f, Node>();
+    
+    // the tiles in view. Tiles that left the view stay attached in leavingItems until they are unloaded,
+    // and locations that came into view wait in missingItems until they are loaded.
+    private final ActiveGrid activeItems = new ActiveGrid(vd_west + vd_east + 1, vd_north + vd_south + 1);
+    private final Map<Vector3f, Node> leavingItems = new LinkedHashMap<Vector3f, Node>();
+    private final Queue<Vector3f> missingItems = new LinkedList<Vector3f>();
+    
+    private final TerrainQuadPool quadPool;
+    private TileStore tileStore;
+    
+    private File snapshotFile;
+    private final Map<Vector3f, float[]> restoredHeightmaps = new ConcurrentHashMap<Vector3f, float[]>();
+    
+    // restored heightmaps were saved with the journal edits up to the snapshot's position, only later ones are replayed.
+    private int snapshotJournalPosition;
+    
+    // the number of journal edits already applied to a quad, kept in its user data.
+    private static final String JOURNAL_POSITION = "JournalPosition";
+    
+    // the tile a quad was last built for, kept in its user data.
+    private static final String TILE_LOCATION = "TileLocation";
+    
+    private final TerrainJournal journal;
+    private File journalFile;
     
     // used for procedural terrain (noise, image, etc)
     public World(SimpleApplication app, int patchSize, int blockSize, float height, int worldScale)
@@ -55,13 +95,16 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
         this.blockSize = blockSize;
         this.worldScale = worldScale;
         this.positionAdjustment = (blockSize - 1) / 2;
+        this.quadPool = new TerrainQuadPool(patchSize, blockSize, getCacheRingSize());
+        this.journal = new TerrainJournal(blockSize, worldScale);
     }
     
     // used for pre-created scenes
     public World(SimpleApplication app, Spatial scene)
     {
         this.app = app;
-        
+        this.quadPool = null;
+        this.journal = null;
     }
     
     public SimpleApplication getApplication() { return this.app; }
@@ -74,6 +117,19 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
         this.vd_west = west;
         
         totalVisibleChunks = (vd_west + vd_east + 1) * (vd_north + vd_south + 1);
+        
+        // the window is rebuilt around the camera on the next update.
+        activeItems.resize(vd_west + vd_east + 1, vd_north + vd_south + 1);
+        oldLocX = oldLocZ = Integer.MAX_VALUE;
+        
+        if (quadPool != null)
+            quadPool.setCapacity(getCacheRingSize());
+    }
+    
+    // the number of tiles in the cache ring around the view, which is rebuilt every time the view moves.
+    private int getCacheRingSize()
+    {
+        return 2 * ((vd_west + vd_east + 1) + (vd_north + vd_south + 1)) + 4;
     }
 
     public void setViewDistance(int distance)
@@ -88,6 +144,13 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
 
     public float getWorldHeight() { return this.worldHeight; }
 
+    /**
+     * The vertical scale the world's terrain quads are built with. Terrain edits are
+     * divided by it before they are added to a heightmap, so worlds that build unscaled
+     * quads override it to return 1.
+     */
+    protected float getHeightScale() { return this.worldHeight; }
+
     public int getThreadPoolCount() { return threadpool.getPoolSize(); }
     public void setThreadPoolCount(int threadcount) { threadpool.setCorePoolSize(threadcount); }
 
@@ -105,8 +168,201 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
     
     public int getWorldScale() { return this.worldScale; }
     
-    public Node getLoadedItem(Vector3f location) { return this.activeItems.get(location); }
-    public Node getCachedItem(Vector3f location) { return this.activeItems.get(location); }
+    public Node getLoadedItem(Vector3f location) { return this.findActiveItem(location); }
+    public Node getCachedItem(Vector3f location) { return this.findActiveItem(location); }
+    
+    // in view, or still attached while it waits to be unloaded.
+    private Node findActiveItem(Vector3f location)
+    {
+        Node chunk = activeItems.get(location);
+        
+        if (chunk == null)
+        {
+            synchronized (leavingItems)
+            {
+                chunk = leavingItems.get(location);
+            }
+        }
+        
+        return chunk;
+    }
+    
+    // for freshly generated heightmaps, which hold none of the journal's edits yet.
+    protected TerrainQuad createTerrainQuad(Vector3f location, String name, float[] heightmap)
+    {
+        return createTerrainQuad(location, name, heightmap, 0);
+    }
+    
+    /**
+     * Replays the terrain journal edits from journalPosition on over the heightmap,
+     * then reuses a quad that was unloaded or dropped from the cache if one is available.
+     * journalPosition is the number of edits the heights already hold, see StoredHeightmap.
+     */
+    protected TerrainQuad createTerrainQuad(Vector3f location, String name, float[] heightmap, int journalPosition)
+    {
+        int position = 0;
+        
+        if (journal != null)
+        {
+            position = journal.size();
+            journal.replay(location, heightmap, getHeightScale(), Math.min(journalPosition, position), position);
+        }
+        
+        TerrainQuad quad = (quadPool == null)
+                ? new TerrainQuad(name, patchSize, blockSize, heightmap)
+                : quadPool.acquire(name, heightmap);
+        
+        // edits made while the quad was being built are applied when it is loaded or cached.
+        quad.setUserData(JOURNAL_POSITION, position);
+        quad.setUserData(TILE_LOCATION, location.clone());
+        
+        return quad;
+    }
+    
+    /**
+     * Generates the heightmap of a tile, without terrain edits, for tools such as
+     * world.Bake that only need the heights. Public so they can call it from outside
+     * the package. Returns null if the tile has no terrain.
+     *
+     * Worlds that can be baked override this to generate the heights alone, without
+     * building a quad, and getWorldItem can use it to generate theirs. By default
+     * there are no heights to bake.
+     */
+    public float[] generateHeightmap(Vector3f location)
+    {
+        return null;
+    }
+    
+    /**
+     * Identifies the generator and settings heightmaps are made with. Stored tiles and
+     * snapshots are stamped with it, and ignored if it changes, so old heights are
+     * never restored next to newly generated ones. Worlds whose terrain can change
+     * between versions should override it to change along with the terrain.
+     */
+    public long getGeneratorFingerprint() { return 0; }
+    
+    // pre-generated tiles, see world.Bake
+    public TileStore getTileStore() { return this.tileStore; }
+    
+    // the store has to be opened with this world's block size and getGeneratorFingerprint, or its tiles wouldn't match the generated ones.
+    public void setTileStore(TileStore tileStore)
+    {
+        if (tileStore != null && tileStore.getBlockSize() != blockSize)
+            throw new IllegalArgumentException("Tile store has a different block size: " + tileStore.getDirectory());
+        
+        if (tileStore != null && tileStore.getFingerprint() != getGeneratorFingerprint())
+            throw new IllegalArgumentException("Tile store was opened for a different terrain generator: " + tileStore.getDirectory());
+        
+        this.tileStore = tileStore;
+    }
+    
+    // returns the pre-generated heightmap for the given terrain location, or null if it must be generated.
+    protected StoredHeightmap getStoredHeightmap(Vector3f location)
+    {
+        // heightmaps from the last session's snapshot are only used once, while restoring.
+        float[] restored = restoredHeightmaps.remove(location);
+        
+        if (restored != null)
+            return new StoredHeightmap(restored, snapshotJournalPosition);
+        
+        if (tileStore == null)
+            return null;
+        
+        try
+        {
+            // baked tiles are the generator's output, without any edits.
+            float[] stored = tileStore.read((int)location.getX(), (int)location.getZ());
+            return (stored == null) ? null : new StoredHeightmap(stored, 0);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(World.class.getName()).log(Level.WARNING, "Unable to read stored tile: " + location, ex);
+            return null;
+        }
+    }
+    
+    // the last session's working set is restored from this file on startup and saved to it on close.
+    public File getSnapshotFile() { return this.snapshotFile; }
+    public void setSnapshotFile(File snapshotFile) { this.snapshotFile = snapshotFile; }
+    
+    // true if the last session's snapshot was restored, including the camera position.
+    public boolean isRestored() { return this.isRestored; }
+    
+    // terrain edits are loaded from this file on startup and appended to it as they are made.
+    public File getJournalFile() { return this.journalFile; }
+    public void setJournalFile(File journalFile) { this.journalFile = journalFile; }
+    
+    public void deformTerrain(TerrainEdit edit)
+    {
+        if (journal == null)
+            throw new UnsupportedOperationException("Only procedural terrain can be deformed.");
+        
+        try
+        {
+            journal.append(edit);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(World.class.getName()).log(Level.WARNING, "Unable to write terrain edit to the journal: " + journalFile, ex);
+        }
+        
+        // tiles that aren't built yet will have the edit replayed when they are.
+        for (Vector3f location : journal.getTiles(edit))
+        {
+            Node active = findActiveItem(location);
+            Node cached = itemsCache.get(location);
+            
+            if (active != null)
+                applyJournal(location, active);
+            
+            if (cached != null && cached != active)
+                applyJournal(location, cached);
+        }
+    }
+    
+    // brings the quad up to date with the journal, rewriting only the patches and collision shape of the tile that changed.
+    private void applyJournal(Vector3f location, Node chunk)
+    {
+        if (journal == null || !(chunk instanceof TerrainQuad))
+            return;
+        
+        Integer position = chunk.getUserData(JOURNAL_POSITION);
+        int from = (position == null) ? 0 : position;
+        int to = journal.size();
+        
+        if (from >= to)
+            return;
+        
+        TerrainQuad quad = (TerrainQuad)chunk;
+        quad.setUserData(JOURNAL_POSITION, to);
+        
+        float[] heightmap = quad.getHeightMap();
+        int[] changed = journal.replay(location, heightmap, getHeightScale(), from, to);
+        
+        if (changed == null)
+            return;
+        
+        // normals around the change depend on it too.
+        TerrainHeights.write(quad, heightmap, changed[0] - 1, changed[1] - 1, changed[2] + 1, changed[3] + 1);
+        quad.clearCaches();
+        
+        // jME can't update part of a heightfield, so the tile's shape is replaced. Other tiles are left alone.
+        RigidBodyControl body = quad.getControl(RigidBodyControl.class);
+        
+        if (body != null && body.getCollisionShape() instanceof HeightfieldCollisionShape)
+        {
+            CollisionShape shape = new HeightfieldCollisionShape(heightmap, body.getCollisionShape().getScale());
+            PhysicsSpace space = body.getPhysicsSpace();
+            
+            if (space != null)
+                space.remove(body);
+            
+            body.setCollisionShape(shape);
+            
+            if (space != null)
+                space.add(body);
+        }
+    }
     
     private int bitCalc(int blockSize)
     {
@@ -145,33 +401,139 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
     
     
     
-    private boolean checkForOldItems()
+    private int toChunkLocation(float position)
     {
-        Iterator<Map.Entry<Vector3f, Node>> iterator = activeItems.entrySet().iterator();
+        int actual = (int)(position + positionAdjustment);
+        
+        return (actual >> this.getBitShiftCount()) / worldScale;
+    }
+    
+    private boolean attachItem(Vector3f location, Node chunk)
+    {
+        // throw the TileLoaded event & check if the tile load has been cancelled.
+        if (!this.worldItemLoaded(chunk))
+            return false;
+        
+        applyJournal(location, chunk);
 
-        while(iterator.hasNext())
-        {
-            Map.Entry<Vector3f, Node> entry = iterator.next();
-            Vector3f quadLocation = entry.getKey();
+        TerrainLodControl lodControl = new TerrainLodControl((TerrainQuad)chunk, app.getCamera());
+        lodControl.setExecutor(threadpool);
+        chunk.addControl(lodControl);
 
-            if (quadLocation.getX() < topLx || quadLocation.getX() > botRx || quadLocation.getZ() < topLz || quadLocation.getZ() > botRz)
-            {
-                TerrainQuad chunk = (TerrainQuad)entry.getValue();
+        activeItems.put(location, chunk);
+        app.getRootNode().attachChild(chunk);
 
-                // throw the tile unloaded event and check if the tile unload has been cancelled
-                if (!this.worldItemUnloaded(chunk))
-                    return false;
+        app.getStateManager().getState(BulletAppState.class).getPhysicsSpace().add(chunk);
+        
+        return true;
+    }
+    
+    private void recycleItem(Node chunk)
+    {
+        // still in the scene, or not ours to recycle.
+        if (quadPool == null || chunk.getParent() != null || !(chunk instanceof TerrainQuad))
+            return;
+        
+        // the LOD and physics controls are added again when the quad is next loaded.
+        chunk.removeControl(TerrainLodControl.class);
+        
+        while (chunk.getControl(PhysicsControl.class) != null)
+            chunk.removeControl(PhysicsControl.class);
+        
+        quadPool.release((TerrainQuad)chunk);
+    }
+    
+    private void cacheItem(Vector3f location, Node chunk)
+    {
+        // the cache ring may have been handed a tile in view that was unloaded before this ran,
+        // and its quad recycled, maybe for another tile. Only cache quads that still belong here.
+        if (chunk.getParent() != null ? findActiveItem(location) != chunk : !isBuiltFor(location, chunk))
+            return;
+        
+        applyJournal(location, chunk);
+        
+        Node replaced = itemsCache.put(location, chunk);
+        
+        if (replaced != null && replaced != chunk)
+            recycleItem(replaced);
+    }
+    
+    // a detached quad belongs to the tile it was built for, until it is released to the pool.
+    private boolean isBuiltFor(Vector3f location, Node chunk)
+    {
+        if (TerrainQuadPool.isReleased(chunk))
+            return false;
+        
+        Vector3f tile = chunk.getUserData(TILE_LOCATION);
+        
+        // not built by createTerrainQuad, so never taken from the pool either.
+        return tile == null || tile.equals(location);
+    }
+    
+    // hands the tiles that left and entered the view since the last move to the streaming queues.
+    private void moveWindow()
+    {
+        if (activeItems.hasOrigin() && activeItems.getOriginX() == topLx && activeItems.getOriginZ() == topLz)
+            return;
+        
+        List<Vector3f> leavingLocations = new ArrayList<Vector3f>();
+        List<Node> leaving = new ArrayList<Node>();
+        List<Vector3f> entering = new ArrayList<Vector3f>();
+        
+        activeItems.move(topLx, topLz, leavingLocations, leaving, entering);
+        
+        synchronized (leavingItems)
+        {
+            for (int i = 0; i < leaving.size(); i++)
+                leavingItems.put(leavingLocations.get(i), leaving.get(i));
+            
+            for (Vector3f location : entering)
+            {
+                // it came back into view before it was unloaded, and is still attached.
+                Node chunk = leavingItems.remove(location);
+                
+                if (chunk != null)
+                    activeItems.put(location, chunk);
+                else
+                    missingItems.add(location);
+            }
+        }
+    }
+    
+    private boolean checkForOldItems()
+    {
+        Map.Entry<Vector3f, Node> entry;
+        
+        synchronized (leavingItems)
+        {
+            if (leavingItems.isEmpty())
+                return false;
+            
+            entry = leavingItems.entrySet().iterator().next();
+        }
+        
+        Vector3f quadLocation = entry.getKey();
+        TerrainQuad chunk = (TerrainQuad)entry.getValue();
 
-                app.getStateManager().getState(BulletAppState.class).getPhysicsSpace().remove(chunk);
-                app.getRootNode().detachChild(chunk);
+        // throw the tile unloaded event and check if the tile unload has been cancelled
+        if (!this.worldItemUnloaded(chunk))
+            return false;
 
-                iterator.remove();
+        app.getStateManager().getState(BulletAppState.class).getPhysicsSpace().remove(chunk);
+        app.getRootNode().detachChild(chunk);
 
-                return true;
-            }
+        synchronized (leavingItems)
+        {
+            leavingItems.remove(quadLocation);
         }
+        
+        // a tile that was loaded from the cache may still be in it.
+        if (itemsCache.get(quadLocation) == chunk)
+            itemsCache.remove(quadLocation);
+        
+        recycleItem(chunk);
 
-        return false;
+        return true;
     }
     
     private boolean checkForNewItems()
@@ -180,6 +542,7 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
         // safely assume this is a reasonable comparative.
         if (activeItems.size() == totalVisibleChunks)
         {
+            missingItems.clear();
             isLoaded = true; // used to determine whether the player can join the world.
             return false;
         }
@@ -189,92 +552,81 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
         
         if (pending != null)
         {
-            // throw the TileLoaded event & check if the tile load has been cancelled.
-            if (!worldItemLoaded(pending))
-                return false;
-
-            TerrainLodControl lodControl = new TerrainLodControl((TerrainQuad)pending, app.getCamera());
-            lodControl.setExecutor(threadpool);
-            pending.addControl(lodControl);
-            
             Vector3f scaledPos = new Vector3f(pending.getWorldTranslation().getX() / this.getWorldScale(), 0, pending.getWorldTranslation().getZ() / this.getWorldScale());
+            Vector3f location = this.toTerrainLocation(scaledPos);
             
-            activeItems.put(this.toTerrainLocation(scaledPos), pending);
-            app.getRootNode().attachChild(pending);
+            // the view moved on while it was being built, keep it for when it comes back.
+            if (!activeItems.contains(location) || activeItems.get(location) != null)
+            {
+                cacheItem(location, pending);
+                return true;
+            }
             
-            app.getStateManager().getState(BulletAppState.class).getPhysicsSpace().add(pending);
-
-            return true;
+            if (attachItem(location, pending))
+                return true;
+            
+            missingItems.add(location);
+            return false;
         }
         else
         {
-            for (int x = topLx; x <= botRx; x++)
+            while (!missingItems.isEmpty())
             {
-                for (int z = topLz; z <= botRz; z++)
-                {
-                    final Vector3f location = new Vector3f(x, 0, z);
+                final Vector3f location = missingItems.poll();
 
-                    // check its already loaded.
-                    if (activeItems.get(location) != null)
-                        continue;
+                // check it's still in view and not already loaded.
+                if (!activeItems.contains(location) || activeItems.get(location) != null)
+                    continue;
 
-                    // check if it's already in the que.
-                    if (itemsQue.contains(location))
-                        continue;
+                // check if it's already in the que.
+                if (itemsQue.contains(location))
+                    continue;
 
-                    // check if its in the cache.
-                    Node chunk = itemsCache.get(location);
+                // check if its in the cache.
+                Node chunk = itemsCache.get(location);
+                
+                if (chunk != null)
+                {
+                    chunk.setShadowMode(ShadowMode.Receive);
                     
-                    if (chunk != null)
-                    {
-                        // throw the TileLoaded event & check if the tile load has been cancelled.
-                        if (!this.worldItemLoaded(chunk))
-                            return false;
-
-                        TerrainLodControl lodControl = new TerrainLodControl((TerrainQuad)chunk, app.getCamera());
-                        lodControl.setExecutor(threadpool);
-                        chunk.addControl(lodControl);
-
-                        chunk.setShadowMode(ShadowMode.Receive);
-
-                        app.getRootNode().attachChild(chunk);
-                        app.getStateManager().getState(BulletAppState.class).getPhysicsSpace().add(chunk);
-                        activeItems.put(location, chunk);
-
+                    if (attachItem(location, chunk))
                         return true;
-                    }
-                    else
-                    {
-                        // its nowhere to be seen, generate it.
-                        itemsQue.add(location);
+                    
+                    // cancelled, try again later.
+                    missingItems.add(location);
+                    return false;
+                }
+                else
+                {
+                    // its nowhere to be seen, generate it.
+                    itemsQue.add(location);
 
-                        threadpool.submit(new Runnable()
+                    threadpool.submit(new Runnable()
+                    {
+                        @Override
+                        public void run()
                         {
-                            @Override
-                            public void run()
+                            Node newChunk = getWorldItem(location);
+                            
+                            if (newChunk != null)
                             {
-                                Node newChunk = getWorldItem(location);
-                                
-                                if (newChunk != null)
-                                {
-                                    newItems.add(newChunk);
+                                newItems.add(newChunk);
 
-                                    // thread safety...
-                                    app.enqueue(new Callable<Boolean>()
+                                // thread safety...
+                                app.enqueue(new Callable<Boolean>()
+                                {
+                                    public Boolean call()
                                     {
-                                        public Boolean call()
-                                        {
-                                            itemsQue.remove(location);
-                                            return true;
-                                        }
-                                    });
-                                }
-                                
+                                        itemsQue.remove(location);
+                                        return true;
+                                    }
+                                });
                             }
-                        });
+                            
+                        }
+                    });
 
-                        return true;
-                    }
+                    return true;
                 }
             }
         }
@@ -284,6 +636,10 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
     
     private void recalculateCache()
     {
+        // anything in the cache that didn't get loaded is rebuilt below, keep its quad for reuse.
+        for (Node chunk : itemsCache.values())
+            recycleItem(chunk);
+        
         itemsCache.clear();
         cacheInterrupted = false;
 
@@ -309,8 +665,8 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
                     {
                         public Boolean call()
                         {
-                            itemsCache.put(topLocation, topChunk);
-                            itemsCache.put(bottomLocation, bottomChunk);
+                            cacheItem(topLocation, topChunk);
+                            cacheItem(bottomLocation, bottomChunk);
 
                             return true;
                         }
@@ -336,8 +692,8 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
                     {
                         public Boolean call()
                         {
-                            itemsCache.put(leftLocation, leftChunk);
-                            itemsCache.put(rightLocation, rightChunk);
+                            cacheItem(leftLocation, leftChunk);
+                            cacheItem(rightLocation, rightChunk);
 
                             return true;
                         }
@@ -349,18 +705,190 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
         threadpool.execute(cacheUpdater);
     }
     
-    @Override public void update(float tpf)
+    private void restoreSnapshot()
+    {
+        WorldSnapshot snapshot;
+        
+        try
+        {
+            snapshot = WorldSnapshot.read(snapshotFile);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(World.class.getName()).log(Level.WARNING, "Unable to read world snapshot: " + snapshotFile, ex);
+            return;
+        }
+        
+        if (snapshot.getBlockSize() != blockSize)
+        {
+            Logger.getLogger(World.class.getName()).log(Level.INFO, "Ignoring world snapshot with a different block size: {0}", snapshotFile);
+            return;
+        }
+        
+        if (snapshot.getFingerprint() != getGeneratorFingerprint())
+        {
+            Logger.getLogger(World.class.getName()).log(Level.INFO, "Ignoring world snapshot made by a different terrain generator: {0}", snapshotFile);
+            return;
+        }
+        
+        // getStoredHeightmap hands these to getWorldItem, so every tile is rebuilt in parallel without generating it.
+        snapshotJournalPosition = snapshot.getJournalPosition();
+        restoredHeightmaps.putAll(snapshot.getActiveHeightmaps());
+        restoredHeightmaps.putAll(snapshot.getCachedHeightmaps());
+        
+        final List<Vector3f> locations = new ArrayList<Vector3f>(restoredHeightmaps.keySet());
+        List<Callable<Node>> tasks = new ArrayList<Callable<Node>>(locations.size());
+        
+        for (final Vector3f location : locations)
+        {
+            tasks.add(new Callable<Node>()
+            {
+                public Node call()
+                {
+                    return getWorldItem(location);
+                }
+            });
+        }
+        
+        List<Future<Node>> results;
+        
+        try
+        {
+            results = threadpool.invokeAll(tasks);
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        finally
+        {
+            restoredHeightmaps.clear();
+        }
+        
+        app.getCamera().setLocation(snapshot.getLocation());
+        app.getCamera().setRotation(snapshot.getRotation());
+        isRestored = true;
+        
+        // put the view window around the restored camera, so the active tiles have somewhere to go.
+        int locX = toChunkLocation(snapshot.getLocation().getX());
+        int locZ = toChunkLocation(snapshot.getLocation().getZ());
+        
+        topLx = locX - vd_west;
+        topLz = locZ - vd_north;
+        botRx = locX + vd_east;
+        botRz = locZ + vd_south;
+        
+        moveWindow();
+        
+        // attach everything in one go, the scene graph belongs to this thread.
+        for (int i = 0; i < locations.size(); i++)
+        {
+            Vector3f location = locations.get(i);
+            Node chunk;
+            
+            try
+            {
+                chunk = results.get(i).get();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException ex)
+            {
+                Logger.getLogger(World.class.getName()).log(Level.WARNING, "Unable to restore tile: " + location, ex.getCause());
+                continue;
+            }
+            
+            if (chunk == null)
+                continue;
+            
+            // the view distance may have changed since the snapshot was taken. A cancelled
+            // load is kept in the cache, the tile is tried again from there like any other.
+            boolean active = snapshot.getActiveHeightmaps().containsKey(location) && activeItems.contains(location);
+            
+            if (!active || !attachItem(location, chunk))
+                cacheItem(location, chunk);
+        }
+        
+        Iterator<Vector3f> missing = missingItems.iterator();
+        
+        while (missing.hasNext())
+        {
+            if (activeItems.get(missing.next()) != null)
+                missing.remove();
+        }
+        
+        // if the snapshot covers the whole view, the world is ready and the cache is already around it.
+        if (activeItems.size() == totalVisibleChunks)
+        {
+            isLoaded = true;
+            
+            oldLocX = locX;
+            oldLocZ = locZ;
+        }
+    }
+    
+    private void saveSnapshot()
     {
-        int actualX = (int)(app.getCamera().getLocation().getX() + positionAdjustment);
-        int actualZ = (int)(app.getCamera().getLocation().getZ() + positionAdjustment);
+        // active and cached quads are brought up to date as each edit is made, so they hold the whole journal.
+        int journalPosition = (journal == null) ? 0 : journal.size();
+        WorldSnapshot snapshot = new WorldSnapshot(blockSize, getGeneratorFingerprint(), journalPosition, app.getCamera().getLocation(), app.getCamera().getRotation());
         
-        int locX = (int)actualX >> this.getBitShiftCount();
-        int locZ = (int)actualZ >> this.getBitShiftCount();
+        Map<Vector3f, Node> active = activeItems.getItems();
         
-        locX /= worldScale;
-        locZ /= worldScale;
+        for (Map.Entry<Vector3f, Node> entry : active.entrySet())
+        {
+            if (entry.getValue() instanceof TerrainQuad)
+                snapshot.getActiveHeightmaps().put(entry.getKey(), ((TerrainQuad)entry.getValue()).getHeightMap());
+        }
+        
+        for (Map.Entry<Vector3f, Node> entry : itemsCache.entrySet())
+        {
+            if (entry.getValue() instanceof TerrainQuad && !active.containsKey(entry.getKey()))
+                snapshot.getCachedHeightmaps().put(entry.getKey(), ((TerrainQuad)entry.getValue()).getHeightMap());
+        }
+        
+        try
+        {
+            snapshot.write(snapshotFile);
+        }
+        catch (IOException ex)
+        {
+            Logger.getLogger(World.class.getName()).log(Level.WARNING, "Unable to write world snapshot: " + snapshotFile, ex);
+        }
+    }
+    
+    @Override public void initialize(AppStateManager stateManager, Application application)
+    {
+        super.initialize(stateManager, application);
         
-        if ((locX == oldLocX) && (locZ == oldLocZ) && itemsQue.isEmpty() && newItems.isEmpty())
+        // the journal has to be loaded before any tile is built, or its edits would be missed.
+        if (journal != null && journalFile != null)
+        {
+            try
+            {
+                journal.open(journalFile);
+            }
+            catch (IOException ex)
+            {
+                Logger.getLogger(World.class.getName()).log(Level.WARNING, "Unable to open terrain journal: " + journalFile, ex);
+            }
+        }
+        
+        // restore the last session's working set before regular streaming begins.
+        if (snapshotFile != null && snapshotFile.isFile())
+            restoreSnapshot();
+    }
+    
+    @Override public void update(float tpf)
+    {
+        int locX = toChunkLocation(app.getCamera().getLocation().getX());
+        int locZ = toChunkLocation(app.getCamera().getLocation().getZ());
+        
+        if ((locX == oldLocX) && (locZ == oldLocZ) && itemsQue.isEmpty() && newItems.isEmpty() && missingItems.isEmpty() && leavingItems.isEmpty())
         {
             return;
         }
@@ -370,6 +898,9 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
         botRx = locX + vd_east;
         botRz = locZ + vd_south;
         
+        // only the tiles that left or entered the view are visited, not the whole window.
+        moveWindow();
+        
         if (checkForOldItems())
             return;
         
@@ -389,6 +920,22 @@ public abstract class World extends AbstractAppState implements IWorld, Closeabl
     
     @Override public void close() 
     { 
+        // an empty world has nothing worth keeping, don't replace the last good snapshot with it.
+        if (snapshotFile != null && activeItems.size() > 0)
+            saveSnapshot();
+        
         threadpool.shutdown(); 
+        
+        if (journal != null)
+        {
+            try
+            {
+                journal.close();
+            }
+            catch (IOException ex)
+            {
+                Logger.getLogger(World.class.getName()).log(Level.WARNING, "Unable to close terrain journal: " + journalFile, ex);
+            }
+        }
     }
 }
@@ -0,0 +1,163 @@
+package world.core;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The working set of a session - the viewpoint and the heightmaps of the active
+ * and cached tiles - so the next session can restore it before streaming begins.
+ *
+ * Heightmaps are saved with the terrain edits made to them. The snapshot records
+ * how many journal edits that is, so edits appended after it was written, say
+ * before a crash, can still be replayed on top. It also records the fingerprint
+ * of the generator the heightmaps came from, see World.getGeneratorFingerprint.
+ */
+public class WorldSnapshot
+{
+    private static final int MAGIC = 0x574C4453; // "WLDS"
+    private static final int VERSION = 3;
+
+    private final int blockSize;
+    private final int journalPosition;
+    private final long fingerprint;
+    private final Vector3f location = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
+
+    private final Map<Vector3f, float[]> activeHeightmaps = new LinkedHashMap<Vector3f, float[]>();
+    private final Map<Vector3f, float[]> cachedHeightmaps = new LinkedHashMap<Vector3f, float[]>();
+
+    public WorldSnapshot(int blockSize, long fingerprint, int journalPosition, Vector3f location, Quaternion rotation)
+    {
+        this.blockSize = blockSize;
+        this.fingerprint = fingerprint;
+        this.journalPosition = journalPosition;
+        this.location.set(location);
+        this.rotation.set(rotation);
+    }
+
+    public int getBlockSize() { return this.blockSize; }
+    public Vector3f getLocation() { return this.location; }
+    public Quaternion getRotation() { return this.rotation; }
+
+    // the generator the heightmaps came from.
+    public long getFingerprint() { return this.fingerprint; }
+
+    // the number of terrain journal edits already in the heightmaps.
+    public int getJournalPosition() { return this.journalPosition; }
+
+    public Map<Vector3f, float[]> getActiveHeightmaps() { return this.activeHeightmaps; }
+    public Map<Vector3f, float[]> getCachedHeightmaps() { return this.cachedHeightmaps; }
+
+    public void write(File file) throws IOException
+    {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))));
+
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(blockSize);
+            out.writeLong(fingerprint);
+            out.writeInt(journalPosition);
+
+            out.writeFloat(location.getX());
+            out.writeFloat(location.getY());
+            out.writeFloat(location.getZ());
+
+            out.writeFloat(rotation.getX());
+            out.writeFloat(rotation.getY());
+            out.writeFloat(rotation.getZ());
+            out.writeFloat(rotation.getW());
+
+            out.writeInt(activeHeightmaps.size() + cachedHeightmaps.size());
+            writeHeightmaps(out, activeHeightmaps, true);
+            writeHeightmaps(out, cachedHeightmaps, false);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        if (!temp.renameTo(file))
+        {
+            file.delete();
+
+            if (!temp.renameTo(file))
+                throw new IOException("Unable to move snapshot into place: " + file);
+        }
+    }
+
+    private void writeHeightmaps(DataOutputStream out, Map<Vector3f, float[]> heightmaps, boolean active) throws IOException
+    {
+        for (Map.Entry<Vector3f, float[]> entry : heightmaps.entrySet())
+        {
+            float[] heightmap = entry.getValue();
+
+            if (heightmap.length != blockSize * blockSize)
+                throw new IOException("Heightmap does not match the block size of this snapshot.");
+
+            out.writeInt((int)entry.getKey().getX());
+            out.writeInt((int)entry.getKey().getZ());
+            out.writeBoolean(active);
+
+            for (int i = 0; i < heightmap.length; i++)
+                out.writeFloat(heightmap[i]);
+        }
+    }
+
+    public static WorldSnapshot read(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+
+        try
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a world snapshot: " + file);
+
+            int blockSize = in.readInt();
+            long fingerprint = in.readLong();
+            int journalPosition = in.readInt();
+            Vector3f location = new Vector3f(in.readFloat(), in.readFloat(), in.readFloat());
+            Quaternion rotation = new Quaternion(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+
+            WorldSnapshot snapshot = new WorldSnapshot(blockSize, fingerprint, journalPosition, location, rotation);
+
+            int count = in.readInt();
+
+            for (int t = 0; t < count; t++)
+            {
+                Vector3f tileLocation = new Vector3f(in.readInt(), 0, in.readInt());
+                boolean active = in.readBoolean();
+
+                float[] heightmap = new float[blockSize * blockSize];
+
+                for (int i = 0; i < heightmap.length; i++)
+                    heightmap[i] = in.readFloat();
+
+                if (active)
+                    snapshot.activeHeightmaps.put(tileLocation, heightmap);
+                else
+                    snapshot.cachedHeightmaps.put(tileLocation, heightmap);
+            }
+
+            return snapshot;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package world.core.noise;
+
+/**
+ * The unfiltered noise of the aprons - the strips along a tile's edges and corners
+ * that overlap the working areas of its neighbours - kept so each is generated once
+ * and reused by every tile that shares it. Least recently used aprons are dropped
+ * first once the cache is full.
+ */
+final class ApronCache extends LruCache<ApronCache.Key, ApronCache.Apron>
+{
+    static final class Key extends LruCache.Key<Key>
+    {
+        private int x, z, width, height;
+        private float base;
+
+        Key set(int x, int z, int width, int height, float base)
+        {
+            this.x = x;
+            this.z = z;
+            this.width = width;
+            this.height = height;
+            this.base = base;
+            return this;
+        }
+
+        @Override
+        Key copy() { return new Key().set(x, z, width, height, base); }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key)obj;
+            return x == other.x && z == other.z && width == other.width && height == other.height
+                    && Float.floatToIntBits(base) == Float.floatToIntBits(other.base);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = x;
+            hash = 31 * hash + z;
+            hash = 31 * hash + width;
+            hash = 31 * hash + height;
+            return 31 * hash + Float.floatToIntBits(base);
+        }
+    }
+
+    static final class Apron
+    {
+        final float[] noise, perturbX, perturbY;
+
+        Apron(int area, boolean perturb)
+        {
+            this.noise = new float[area];
+            this.perturbX = perturb ? new float[area] : null;
+            this.perturbY = perturb ? new float[area] : null;
+        }
+    }
+
+    ApronCache(int capacity)
+    {
+        super(capacity);
+    }
+}
@@ -0,0 +1,292 @@
+package world.core.noise;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fractal sum of improved noise octaves, configured like jME's FractalSum.
+ *
+ * As in FractalSum, octaves bounds the frequency at 2^octaves rather than
+ * counting octaves: frequency is multiplied by lacunarity until it reaches that
+ * bound, so the number of octaves summed depends on the lacunarity.
+ *
+ * Buffers are filled octave by octave. Everything that only depends on the row,
+ * the column or the lattice cell is worked out once, instead of per sample, and
+ * the result is still bit for bit what sampling FractalSum one value at a time gives.
+ *
+ * Optionally the lowest octaves, which barely change from one sample to the next,
+ * are interpolated from a cached coarse lattice instead, see setLowOctaveCache.
+ */
+public class FractalNoise
+{
+    private float scale = 1f;
+    private float frequency = 1f, amplitude = 1f;
+    private float roughness = 0.6f, lacunarity = 2.124367f;
+    private float octaves = 1f;
+
+    private final List<NoiseModulator> modulators = new ArrayList<NoiseModulator>();
+    private NoiseModulator[] modulatorArray = new NoiseModulator[0];
+
+    // the frequency and amplitude of every octave summed.
+    private float[] octaveFrequencies, octaveAmplitudes;
+
+    private LowOctaveCache lowOctaves;
+
+    public FractalNoise()
+    {
+        updateOctaves();
+    }
+
+    public float getScale() { return this.scale; }
+    public FractalNoise setScale(float scale) { this.scale = scale; return this; }
+
+    public float getFrequency() { return this.frequency; }
+    public FractalNoise setFrequency(float frequency) { this.frequency = frequency; updateOctaves(); return this; }
+
+    public float getAmplitude() { return this.amplitude; }
+    public FractalNoise setAmplitude(float amplitude) { this.amplitude = amplitude; updateOctaves(); return this; }
+
+    public float getRoughness() { return this.roughness; }
+    public FractalNoise setRoughness(float roughness) { this.roughness = roughness; updateOctaves(); return this; }
+
+    public float getLacunarity() { return this.lacunarity; }
+    public FractalNoise setLacunarity(float lacunarity) { this.lacunarity = lacunarity; updateOctaves(); return this; }
+
+    public float getOctaves() { return this.octaves; }
+    public FractalNoise setOctaves(float octaves) { this.octaves = octaves; updateOctaves(); return this; }
+
+    public FractalNoise addModulator(NoiseModulator modulator)
+    {
+        modulators.add(modulator);
+        modulatorArray = modulators.toArray(new NoiseModulator[modulators.size()]);
+        return this;
+    }
+
+    public int getOctaveCount() { return this.octaveFrequencies.length; }
+
+    float getOctaveFrequency(int octave) { return this.octaveFrequencies[octave]; }
+    float getOctaveAmplitude(int octave) { return this.octaveAmplitudes[octave]; }
+
+    /**
+     * Evaluates the low frequency octaves once every spacing samples, over regions of
+     * cells * cells lattice cells, keeps up to capacity regions and interpolates tiles
+     * from them. As many octaves are interpolated as keep the error under maxError,
+     * and regions that turn out less accurate than that are evaluated exactly.
+     * A capacity of 0 turns it off. Only tiles whose first sample is on a whole
+     * number are interpolated. Set it after the rest of the configuration.
+     */
+    public FractalNoise setLowOctaveCache(int spacing, int cells, int capacity, float maxError)
+    {
+        this.lowOctaves = (capacity > 0) ? new LowOctaveCache(spacing, cells, capacity, maxError) : null;
+        return this;
+    }
+
+    // the number of octaves interpolated from the low octave cache when sampling at 1 / divisor per sample.
+    public int getCachedOctaveCount(float divisor)
+    {
+        return (lowOctaves == null) ? 0 : lowOctaves.getOctaveCount(this, divisor);
+    }
+
+    /**
+     * A hash of every setting that changes the noise, to tell apart heightmaps made
+     * with different ones. Modulators only count by their class, so a modulator that
+     * changes what it does should change its world's fingerprint as well.
+     */
+    public long getFingerprint()
+    {
+        long hash = Float.floatToIntBits(scale);
+        hash = 31 * hash + Float.floatToIntBits(frequency);
+        hash = 31 * hash + Float.floatToIntBits(amplitude);
+        hash = 31 * hash + Float.floatToIntBits(roughness);
+        hash = 31 * hash + Float.floatToIntBits(lacunarity);
+        hash = 31 * hash + Float.floatToIntBits(octaves);
+
+        for (int m = 0; m < modulatorArray.length; m++)
+            hash = 31 * hash + modulatorArray[m].getClass().getName().hashCode();
+
+        // interpolating the low octaves changes the result too, if only slightly.
+        return 31 * hash + ((lowOctaves == null) ? 0 : lowOctaves.getFingerprint());
+    }
+
+    private void updateOctaves()
+    {
+        int maxFrequency = 1 << (int)octaves;
+        int count = 0;
+
+        // lacunarity <= 1 would never reach the bound.
+        if (lacunarity > 1f)
+        {
+            for (float f = frequency; f < maxFrequency; f *= lacunarity)
+                count++;
+        }
+
+        octaveFrequencies = new float[count];
+        octaveAmplitudes = new float[count];
+
+        float f = frequency, a = amplitude;
+
+        for (int o = 0; o < count; o++, f *= lacunarity, a *= roughness)
+        {
+            octaveFrequencies[o] = f;
+            octaveAmplitudes[o] = a;
+        }
+    }
+
+    // a single sample, for when a whole buffer isn't needed.
+    public float value(float x, float y, float z)
+    {
+        return modulate(clamp(sum(octaveFrequencies.length, x, y, z), -1f, 1f));
+    }
+
+    // the sum of the first count octaves, before it is clamped and modulated.
+    float sum(int count, float x, float y, float z)
+    {
+        float total = 0;
+
+        for (int o = 0; o < count; o++)
+        {
+            float f = octaveFrequencies[o];
+            total += ImprovedNoise.noise(scale * x * f, scale * y * f, scale * z * f) * octaveAmplitudes[o];
+        }
+
+        return total;
+    }
+
+    private float modulate(float value)
+    {
+        for (int m = 0; m < modulatorArray.length; m++)
+            value = modulatorArray[m].modulate(value);
+
+        return value;
+    }
+
+    private static float clamp(float value, float min, float max)
+    {
+        return value < min ? min : value > max ? max : value;
+    }
+
+    /**
+     * Fills size * size samples of dst, row by row, with the sample at column i and
+     * row j taken at ((x0 + i) / divisor, (y0 + j) / divisor, z). compatibleFloor
+     * reproduces the lattice rounding of jME's ImprovedNoise.
+     */
+    void fill(float[] dst, int size, float x0, float y0, float z, float divisor, boolean compatibleFloor, NoiseWorkspace workspace)
+    {
+        fill(dst, 0, size, size, size, x0, y0, z, divisor, compatibleFloor, workspace);
+    }
+
+    // as above, for a width * height rectangle of dst starting at offset, with rows stride apart.
+    void fill(float[] dst, int offset, int stride, int width, int height, float x0, float y0, float z, float divisor, boolean compatibleFloor, NoiseWorkspace workspace)
+    {
+        for (int j = 0; j < height; j++)
+            Arrays.fill(dst, offset + j * stride, offset + j * stride + width, 0f);
+
+        float[] columnCoord = workspace.columnCoord, columnFrac = workspace.columnFrac, columnFade = workspace.columnFade;
+        int[] columnCell = workspace.columnCell;
+        float[] rowCoord = workspace.rowCoord;
+
+        for (int i = 0; i < width; i++)
+            columnCoord[i] = scale * ((x0 + i) / divisor);
+
+        for (int j = 0; j < height; j++)
+            rowCoord[j] = scale * ((y0 + j) / divisor);
+
+        float scaledZ = scale * z;
+
+        int[] p = ImprovedNoise.P;
+        float[] gx = ImprovedNoise.GX, gy = ImprovedNoise.GY, gz = ImprovedNoise.GZ;
+
+        // the lowest octaves may come from the lattice, the rest are evaluated below.
+        int first = 0;
+        LowOctaveCache cache = this.lowOctaves;
+
+        if (cache != null && x0 == (int)x0 && y0 == (int)y0)
+            first = cache.add(this, dst, offset, stride, width, height, (int)x0, (int)y0, z, divisor, workspace);
+
+        for (int o = first; o < octaveFrequencies.length; o++)
+        {
+            float f = octaveFrequencies[o];
+            float a = octaveAmplitudes[o];
+
+            for (int i = 0; i < width; i++)
+            {
+                float x = columnCoord[i] * f;
+                int ix = compatibleFloor ? ImprovedNoise.compatibleFloor(x) : ImprovedNoise.floor(x);
+                float xf = x - ix;
+
+                columnCell[i] = ix & 255;
+                columnFrac[i] = xf;
+                columnFade[i] = ImprovedNoise.fade(xf);
+            }
+
+            float zc = scaledZ * f;
+            int iz = compatibleFloor ? ImprovedNoise.compatibleFloor(zc) : ImprovedNoise.floor(zc);
+            float zf = zc - iz, zf1 = zf - 1;
+            float w = ImprovedNoise.fade(zf);
+            int Z = iz & 255;
+
+            for (int j = 0; j < height; j++)
+            {
+                float y = rowCoord[j] * f;
+                int iy = compatibleFloor ? ImprovedNoise.compatibleFloor(y) : ImprovedNoise.floor(y);
+                float yf = y - iy, yf1 = yf - 1;
+                float v = ImprovedNoise.fade(yf);
+                int Y = iy & 255;
+
+                int row = offset + j * stride;
+                int lastCell = -1;
+
+                // the x gradient and the constant y and z part of each corner's dot product.
+                float g0 = 0, g1 = 0, g2 = 0, g3 = 0, g4 = 0, g5 = 0, g6 = 0, g7 = 0;
+                float c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0, c6 = 0, c7 = 0;
+
+                for (int i = 0; i < width; i++)
+                {
+                    int X = columnCell[i];
+
+                    // neighbouring samples mostly share a lattice cell, and so its corner gradients.
+                    if (X != lastCell)
+                    {
+                        int A = p[X] + Y, AA = p[A] + Z, AB = p[A + 1] + Z;
+                        int B = p[X + 1] + Y, BA = p[B] + Z, BB = p[B + 1] + Z;
+
+                        int h = p[AA] & 15;     g0 = gx[h]; c0 = yf * gy[h] + zf * gz[h];
+                        h = p[BA] & 15;         g1 = gx[h]; c1 = yf * gy[h] + zf * gz[h];
+                        h = p[AB] & 15;         g2 = gx[h]; c2 = yf1 * gy[h] + zf * gz[h];
+                        h = p[BB] & 15;         g3 = gx[h]; c3 = yf1 * gy[h] + zf * gz[h];
+                        h = p[AA + 1] & 15;     g4 = gx[h]; c4 = yf * gy[h] + zf1 * gz[h];
+                        h = p[BA + 1] & 15;     g5 = gx[h]; c5 = yf * gy[h] + zf1 * gz[h];
+                        h = p[AB + 1] & 15;     g6 = gx[h]; c6 = yf1 * gy[h] + zf1 * gz[h];
+                        h = p[BB + 1] & 15;     g7 = gx[h]; c7 = yf1 * gy[h] + zf1 * gz[h];
+
+                        lastCell = X;
+                    }
+
+                    float xf = columnFrac[i], xf1 = xf - 1;
+                    float u = columnFade[i];
+
+                    // every gradient has one zero component, so each dot product is a sum of
+                    // two exact terms and splitting it this way doesn't change the rounding.
+                    float n = ImprovedNoise.lerp(w,
+                            ImprovedNoise.lerp(v,
+                                    ImprovedNoise.lerp(u, xf * g0 + c0, xf1 * g1 + c1),
+                                    ImprovedNoise.lerp(u, xf * g2 + c2, xf1 * g3 + c3)),
+                            ImprovedNoise.lerp(v,
+                                    ImprovedNoise.lerp(u, xf * g4 + c4, xf1 * g5 + c5),
+                                    ImprovedNoise.lerp(u, xf * g6 + c6, xf1 * g7 + c7)));
+
+                    dst[row + i] += n * a;
+                }
+            }
+        }
+
+        for (int j = 0; j < height; j++)
+        {
+            int row = offset + j * stride;
+
+            for (int i = row; i < row + width; i++)
+                dst[i] = modulate(clamp(dst[i], -1f, 1f));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package world.core.noise;
+
+/**
+ * Ken Perlin's improved noise, with the same permutation and gradient table as
+ * jME's ImprovedNoise so results can be matched exactly.
+ */
+final class ImprovedNoise
+{
+    private static final int[] PERMUTATION =
+    {
+        151, 160, 137, 91, 90, 15, 131, 13, 201, 95, 96, 53, 194, 233, 7, 225, 140, 36, 103, 30, 69, 142,
+        8, 99, 37, 240, 21, 10, 23, 190, 6, 148, 247, 120, 234, 75, 0, 26, 197, 62, 94, 252, 219, 203, 117,
+        35, 11, 32, 57, 177, 33, 88, 237, 149, 56, 87, 174, 20, 125, 136, 171, 168, 68, 175, 74, 165, 71,
+        134, 139, 48, 27, 166, 77, 146, 158, 231, 83, 111, 229, 122, 60, 211, 133, 230, 220, 105, 92, 41,
+        55, 46, 245, 40, 244, 102, 143, 54, 65, 25, 63, 161, 1, 216, 80, 73, 209, 76, 132, 187, 208, 89,
+        18, 169, 200, 196, 135, 130, 116, 188, 159, 86, 164, 100, 109, 198, 173, 186, 3, 64, 52, 217, 226,
+        250, 124, 123, 5, 202, 38, 147, 118, 126, 255, 82, 85, 212, 207, 206, 59, 227, 47, 16, 58, 17, 182,
+        189, 28, 42, 223, 183, 170, 213, 119, 248, 152, 2, 44, 154, 163, 70, 221, 153, 101, 155, 167, 43,
+        172, 9, 129, 22, 39, 253, 19, 98, 108, 110, 79, 113, 224, 232, 178, 185, 112, 104, 218, 246, 97,
+        228, 251, 34, 242, 193, 238, 210, 144, 12, 191, 179, 162, 241, 81, 51, 145, 235, 249, 14, 239, 107,
+        49, 192, 214, 31, 181, 199, 106, 157, 184, 84, 204, 176, 115, 121, 50, 45, 127, 4, 150, 254, 138,
+        236, 205, 93, 222, 114, 67, 29, 24, 72, 243, 141, 128, 195, 78, 66, 215, 61, 156, 180
+    };
+
+    // the permutation repeated twice, so lookups never need to wrap.
+    static final int[] P = new int[512];
+
+    // gradient directions, indexed by hash & 15.
+    static final float[] GX = { 1, -1, 1, -1, 1, -1, 1, -1, 0, 0, 0, 0, 1, -1, 0, 0 };
+    static final float[] GY = { 1, 1, -1, -1, 0, 0, 0, 0, 1, -1, 1, -1, 0, 0, -1, 1 };
+    static final float[] GZ = { 0, 0, 0, 0, 1, 1, -1, -1, 1, 1, -1, -1, -1, -1, 1, 1 };
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+            P[i] = P[256 + i] = PERMUTATION[i];
+    }
+
+    private ImprovedNoise() { }
+
+    static int floor(float value)
+    {
+        int i = (int)value;
+        return value < i ? i - 1 : i;
+    }
+
+    // jME's ShaderUtils.floor, which treats every value <= 0 as negative (so floor(0) is -1).
+    static int compatibleFloor(float value)
+    {
+        return value > 0 ? (int)value : (int)value - 1;
+    }
+
+    static float fade(float t)
+    {
+        return t * t * t * (t * (t * 6f - 15f) + 10f);
+    }
+
+    static float lerp(float t, float a, float b)
+    {
+        return a + t * (b - a);
+    }
+
+    static float grad(int hash, float x, float y, float z)
+    {
+        int h = hash & 15;
+        return x * GX[h] + y * GY[h] + z * GZ[h];
+    }
+
+    static float noise(float x, float y, float z)
+    {
+        int ix = floor(x), iy = floor(y), iz = floor(z);
+
+        x -= ix;
+        y -= iy;
+        z -= iz;
+
+        int X = ix & 255, Y = iy & 255, Z = iz & 255;
+        float u = fade(x), v = fade(y), w = fade(z);
+
+        int A = P[X] + Y, AA = P[A] + Z, AB = P[A + 1] + Z;
+        int B = P[X + 1] + Y, BA = P[B] + Z, BB = P[B + 1] + Z;
+
+        return lerp(w, lerp(v, lerp(u, grad(P[AA], x, y, z), grad(P[BA], x - 1, y, z)),
+                               lerp(u, grad(P[AB], x, y - 1, z), grad(P[BB], x - 1, y - 1, z))),
+                       lerp(v, lerp(u, grad(P[AA + 1], x, y, z - 1), grad(P[BA + 1], x - 1, y, z - 1)),
+                               lerp(u, grad(P[AB + 1], x, y - 1, z - 1), grad(P[BB + 1], x - 1, y - 1, z - 1))));
+    }
+}
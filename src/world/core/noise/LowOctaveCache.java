@@ -0,0 +1,233 @@
+package world.core.noise;
+
+/**
+ * The sum of a fractal's lowest frequency octaves, evaluated on a coarse lattice
+ * over square regions several tiles wide and interpolated into each tile.
+ *
+ * Octaves are taken from the lowest up while the estimated interpolation error
+ * stays under maxError. Each region is then checked against exact values at the
+ * centres of its cells, where bilinear interpolation is furthest from the nodes;
+ * if it is out by more than maxError, tiles touching it are evaluated exactly.
+ */
+final class LowOctaveCache
+{
+    static final class Key extends LruCache.Key<Key>
+    {
+        private int x, z;
+        private float base, divisor;
+
+        Key set(int x, int z, float base, float divisor)
+        {
+            this.x = x;
+            this.z = z;
+            this.base = base;
+            this.divisor = divisor;
+            return this;
+        }
+
+        @Override
+        Key copy() { return new Key().set(x, z, base, divisor); }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key)obj;
+            return x == other.x && z == other.z
+                    && Float.floatToIntBits(base) == Float.floatToIntBits(other.base)
+                    && Float.floatToIntBits(divisor) == Float.floatToIntBits(other.divisor);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = x;
+            hash = 31 * hash + z;
+            hash = 31 * hash + Float.floatToIntBits(base);
+            return 31 * hash + Float.floatToIntBits(divisor);
+        }
+    }
+
+    private static final class Region
+    {
+        final float[] lattice;
+        final boolean accurate;
+
+        Region(float[] lattice, boolean accurate)
+        {
+            this.lattice = lattice;
+            this.accurate = accurate;
+        }
+    }
+
+    private final int spacing, cells;
+    private final float maxError;
+    private final LruCache<Key, Region> regions;
+
+    LowOctaveCache(int spacing, int cells, int capacity, float maxError)
+    {
+        this.spacing = spacing;
+        this.cells = cells;
+        this.maxError = maxError;
+        this.regions = new LruCache<Key, Region>(capacity);
+    }
+
+    // the settings that change the interpolated result, the capacity doesn't.
+    long getFingerprint()
+    {
+        long hash = spacing;
+        hash = 31 * hash + cells;
+        return 31 * hash + Float.floatToIntBits(maxError);
+    }
+
+    private static int floorDiv(int value, int divisor)
+    {
+        int result = value / divisor;
+        return (value % divisor != 0 && (value < 0) != (divisor < 0)) ? result - 1 : result;
+    }
+
+    /**
+     * The number of octaves, from the lowest, that can be interpolated from the lattice.
+     * Bilinear interpolation is out by at most a second derivative times step^2 / 8 and
+     * improved noise's stays below 8, so each octave adds up to amplitude * step^2.
+     */
+    int getOctaveCount(FractalNoise fractal, float divisor)
+    {
+        float estimate = 0;
+        int count = 0;
+
+        for (int o = 0; o < fractal.getOctaveCount(); o++)
+        {
+            float step = fractal.getScale() * fractal.getOctaveFrequency(o) * spacing / divisor;
+            estimate += Math.abs(fractal.getOctaveAmplitude(o)) * step * step;
+
+            if (estimate > maxError)
+                break;
+
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds the interpolated low octaves to a width * height rectangle of dst whose first
+     * sample is at (x0, y0). Returns how many octaves were added, 0 if the rectangle has
+     * to be evaluated exactly.
+     */
+    int add(FractalNoise fractal, float[] dst, int offset, int stride, int width, int height, int x0, int y0, float z, float divisor, NoiseWorkspace workspace)
+    {
+        int count = getOctaveCount(fractal, divisor);
+
+        if (count == 0)
+            return 0;
+
+        int span = cells * spacing;
+        int fromX = floorDiv(x0, span), toX = floorDiv(x0 + width - 1, span);
+        int fromZ = floorDiv(y0, span), toZ = floorDiv(y0 + height - 1, span);
+        int across = toX - fromX + 1;
+
+        float[][] lattices = workspace.lattices(across * (toZ - fromZ + 1));
+
+        for (int rz = fromZ; rz <= toZ; rz++)
+        {
+            for (int rx = fromX; rx <= toX; rx++)
+            {
+                Region region = getRegion(fractal, workspace.regionKey.set(rx, rz, z, divisor), count);
+
+                if (!region.accurate)
+                    return 0;
+
+                lattices[(rz - fromZ) * across + (rx - fromX)] = region.lattice;
+            }
+        }
+
+        int nodes = cells + 1;
+        float invSpacing = 1f / spacing;
+
+        // every row crosses the same regions and cells, work them out once.
+        int[] columnRegion = workspace.columnRegion, columnNode = workspace.columnCell;
+        float[] columnFrac = workspace.columnFrac;
+
+        for (int i = 0; i < width; i++)
+        {
+            int gx = x0 + i;
+            int rx = floorDiv(gx, span);
+            int localX = gx - rx * span;
+            int cx = localX / spacing;
+
+            columnRegion[i] = rx - fromX;
+            columnNode[i] = cx;
+            columnFrac[i] = (localX - cx * spacing) * invSpacing;
+        }
+
+        for (int j = 0; j < height; j++)
+        {
+            int gz = y0 + j;
+            int rz = floorDiv(gz, span);
+            int localZ = gz - rz * span;
+            int cz = localZ / spacing;
+            float tz = (localZ - cz * spacing) * invSpacing;
+
+            int row = offset + j * stride;
+            int regionRow = (rz - fromZ) * across;
+
+            int rowNode = cz * nodes;
+
+            for (int i = 0; i < width; i++)
+            {
+                float tx = columnFrac[i];
+                float[] lattice = lattices[regionRow + columnRegion[i]];
+                int node = rowNode + columnNode[i];
+
+                float top = ImprovedNoise.lerp(tx, lattice[node], lattice[node + 1]);
+                float bottom = ImprovedNoise.lerp(tx, lattice[node + nodes], lattice[node + nodes + 1]);
+
+                dst[row + i] += ImprovedNoise.lerp(tz, top, bottom);
+            }
+        }
+
+        return count;
+    }
+
+    private Region getRegion(FractalNoise fractal, Key key, int count)
+    {
+        Region region = regions.get(key);
+
+        if (region != null)
+            return region;
+
+        int nodes = cells + 1;
+        int originX = key.x * cells * spacing, originZ = key.z * cells * spacing;
+        float z = key.base, divisor = key.divisor;
+        float[] lattice = new float[nodes * nodes];
+
+        for (int j = 0; j < nodes; j++)
+        {
+            for (int i = 0; i < nodes; i++)
+                lattice[j * nodes + i] = fractal.sum(count, (originX + i * spacing) / divisor, (originZ + j * spacing) / divisor, z);
+        }
+
+        float error = 0;
+        float half = spacing * 0.5f;
+
+        for (int j = 0; j < cells && error <= maxError; j++)
+        {
+            for (int i = 0; i < cells; i++)
+            {
+                int node = j * nodes + i;
+                float interpolated = 0.25f * (lattice[node] + lattice[node + 1] + lattice[node + nodes] + lattice[node + nodes + 1]);
+                float exact = fractal.sum(count, (originX + i * spacing + half) / divisor, (originZ + j * spacing + half) / divisor, z);
+
+                error = Math.max(error, Math.abs(exact - interpolated));
+            }
+        }
+
+        region = new Region(lattice, error <= maxError);
+        regions.put(key, region);
+
+        return region;
+    }
+}
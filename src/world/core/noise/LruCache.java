@@ -0,0 +1,39 @@
+package world.core.noise;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map that holds at most capacity entries, dropping the least recently used
+ * first once it is full. Safe to share between threads.
+ */
+class LruCache<K extends LruCache.Key<K>, V>
+{
+    // mutable so one key per thread can be reused for lookups, only copies go into the cache.
+    abstract static class Key<K>
+    {
+        abstract K copy();
+    }
+
+    private final int capacity;
+    private final Map<K, V> entries;
+
+    LruCache(final int capacity)
+    {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    int getCapacity() { return this.capacity; }
+
+    synchronized V get(K key) { return entries.get(key); }
+    synchronized void put(K key, V value) { entries.put(key.copy(), value); }
+    synchronized int size() { return entries.size(); }
+}
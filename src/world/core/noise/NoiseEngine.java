@@ -0,0 +1,430 @@
+package world.core.noise;
+
+import java.util.Arrays;
+
+/**
+ * Generates filtered fractal heightmaps straight into a caller's float[].
+ *
+ * The pipeline is fixed: fractal noise, then perturb, then erode for the given
+ * number of iterations, then smooth. Each stage is optional and runs over a
+ * working area grown by a margin on every side, so the filters have the
+ * neighbouring samples they need; only the middle size * size samples are kept.
+ *
+ * Scratch buffers belong to the calling thread and are reused from tile to tile,
+ * so once warmed up no memory is allocated other than for new entries in the apron
+ * and low octave caches, and one engine can be used from any number of threads
+ * once it has been configured.
+ *
+ * In ALIGNED mode the margins of neighbouring tiles overlap on the same world
+ * samples. With an apron cache set, the noise of each overlapping strip is
+ * generated once and shared by the tiles on either side of it, which also makes
+ * those tiles match exactly along their common edge.
+ */
+public class NoiseEngine
+{
+    public enum Mode
+    {
+        /**
+         * Gives the same result as a FilteredBasis built from a FractalSum with a
+         * perturb, iterated erode and smooth filter, quirks included: the noise is
+         * scaled by the working area rather than the tile, the lattice is rounded the
+         * way jME does it, and the perturb offsets are not shifted by the margin.
+         */
+        COMPATIBLE,
+
+        /**
+         * Samples every buffer from the same world grid, one unit per size samples,
+         * so the terrain doesn't move or rescale when the filters change.
+         */
+        ALIGNED
+    }
+
+    private static final float PERTURB_SCALE = 5f;
+    private static final float PERTURB_OCTAVES = 8f;
+
+    private final FractalNoise fractal;
+    private final Mode mode;
+
+    private boolean perturb;
+    private float perturbMagnitude;
+    private final FractalNoise perturbNoise = new FractalNoise().setOctaves(PERTURB_OCTAVES).setScale(PERTURB_SCALE);
+
+    private int erodeRadius, erodeIterations;
+    private float erodeTalus;
+
+    private int smoothRadius;
+    private float smoothEffect;
+
+    private ApronCache apronCache;
+
+    private final ThreadLocal<NoiseWorkspace> workspaces = new ThreadLocal<NoiseWorkspace>()
+    {
+        @Override
+        protected NoiseWorkspace initialValue()
+        {
+            return new NoiseWorkspace();
+        }
+    };
+
+    public NoiseEngine(FractalNoise fractal, Mode mode)
+    {
+        this.fractal = fractal;
+        this.mode = mode;
+    }
+
+    public FractalNoise getFractal() { return this.fractal; }
+    public Mode getMode() { return this.mode; }
+
+    public NoiseEngine setPerturb(float magnitude)
+    {
+        this.perturb = magnitude > 0;
+        this.perturbMagnitude = magnitude;
+        return this;
+    }
+
+    public NoiseEngine setErode(int radius, float talus, int iterations)
+    {
+        this.erodeRadius = radius;
+        this.erodeTalus = talus;
+        this.erodeIterations = iterations;
+        return this;
+    }
+
+    public NoiseEngine setSmooth(int radius, float effect)
+    {
+        this.smoothRadius = radius;
+        this.smoothEffect = effect;
+        return this;
+    }
+
+    /**
+     * Keeps the noise of up to capacity aprons for neighbouring tiles to share, 0 turns
+     * it off. Only used in ALIGNED mode, for tiles laid out size - 1 samples apart whose
+     * margins are narrower than half a tile. Set it after the rest of the configuration.
+     */
+    public NoiseEngine setApronCache(int capacity)
+    {
+        this.apronCache = (capacity > 0) ? new ApronCache(capacity) : null;
+        return this;
+    }
+
+    public int getApronCacheCapacity() { return (apronCache == null) ? 0 : apronCache.getCapacity(); }
+
+    /**
+     * A hash of every setting that changes the heightmaps, see FractalNoise.getFingerprint.
+     * The apron cache only changes how fast they are made, so it isn't included.
+     */
+    public long getFingerprint()
+    {
+        long hash = mode.name().hashCode();
+        hash = 31 * hash + fractal.getFingerprint();
+        hash = 31 * hash + (perturb ? Float.floatToIntBits(perturbMagnitude) : 0);
+
+        if (isEroding())
+        {
+            hash = 31 * hash + erodeRadius;
+            hash = 31 * hash + Float.floatToIntBits(erodeTalus);
+            hash = 31 * hash + erodeIterations;
+        }
+
+        if (isSmoothing())
+        {
+            hash = 31 * hash + smoothRadius;
+            hash = 31 * hash + Float.floatToIntBits(smoothEffect);
+        }
+
+        return hash;
+    }
+
+    private boolean isEroding() { return erodeIterations > 0 && erodeRadius > 0; }
+    private boolean isSmoothing() { return smoothRadius > 0; }
+
+    /**
+     * The number of extra samples generated on each side of a tile of the given size.
+     * Worked out the way jME's IterativeFilter and its pre and post filters add them up.
+     */
+    public int getMargin(int size)
+    {
+        int iterated = isEroding() ? erodeRadius : 0;
+        int margin = iterated;
+
+        if (perturb)
+            margin = (int)Math.floor(perturbMagnitude * (margin + size) + margin);
+
+        if (isSmoothing())
+            margin += smoothRadius;
+
+        return (isEroding() ? erodeIterations : 0) * iterated + margin;
+    }
+
+    /**
+     * Fills the first size * size entries of out, row by row, with the tile whose
+     * first sample is at (x, y). base selects the slice of 3d noise to use.
+     */
+    public void getBuffer(float[] out, float x, float y, float base, int size)
+    {
+        if (out.length < size * size)
+            throw new IllegalArgumentException("out holds " + out.length + " samples, " + (size * size) + " are needed.");
+
+        int margin = getMargin(size);
+        int workSize = size + margin * 2;
+
+        NoiseWorkspace workspace = workspaces.get();
+        workspace.ensure(workSize);
+
+        boolean compatible = mode == Mode.COMPATIBLE;
+        float divisor = compatible ? workSize : size;
+
+        ApronCache aprons = this.apronCache;
+
+        if (aprons != null && !compatible && size - 1 > margin * 2 && x == (int)x && y == (int)y)
+        {
+            fillWithAprons(workspace, aprons, (int)x, (int)y, base, size, margin, divisor);
+        }
+        else
+        {
+            fractal.fill(workspace.front, workSize, x - margin, y - margin, base, divisor, compatible, workspace);
+
+            if (perturb)
+            {
+                // jME samples the offsets at the tile position, not the working area's.
+                float px = compatible ? x : x - margin;
+                float py = compatible ? y : y - margin;
+
+                perturbNoise.fill(workspace.perturbX, workSize, px, py, base, divisor, compatible, workspace);
+                perturbNoise.fill(workspace.perturbY, workSize, px, py, base + 1, divisor, compatible, workspace);
+            }
+        }
+
+        if (perturb)
+        {
+            perturb(workspace.front, workspace.back, workspace.perturbX, workspace.perturbY, workSize);
+            workspace.flip();
+        }
+
+        if (isEroding())
+        {
+            for (int i = 0; i < erodeIterations; i++)
+            {
+                erode(workspace.front, workspace.back, workSize);
+                workspace.flip();
+            }
+        }
+
+        if (isSmoothing())
+        {
+            smooth(workspace.front, workspace.back, workSize);
+            workspace.flip();
+        }
+
+        float[] result = workspace.front;
+
+        for (int row = 0; row < size; row++)
+            System.arraycopy(result, (row + margin) * workSize + margin, out, row * size, size);
+    }
+
+    /**
+     * Fills the unfiltered noise of the working area in nine parts: the middle of the
+     * tile, which no other tile needs, and the aprons along its edges and corners,
+     * which are 2 * margin + 1 samples wide and centred on the samples it shares with
+     * its neighbours. Aprons come from the cache, or are generated and added to it.
+     */
+    private void fillWithAprons(NoiseWorkspace workspace, ApronCache aprons, int x, int y, float base, int size, int margin, float divisor)
+    {
+        int span = size - 1;
+        int workSize = size + margin * 2;
+
+        int apron = margin * 2 + 1;
+        int[] bandStart = workspace.bandStart, bandSize = workspace.bandSize;
+
+        bandStart[0] = 0;     bandSize[0] = apron;
+        bandStart[1] = apron; bandSize[1] = span - apron;
+        bandStart[2] = span;  bandSize[2] = apron;
+
+        for (int bz = 0; bz < 3; bz++)
+        {
+            for (int bx = 0; bx < 3; bx++)
+            {
+                int width = bandSize[bx], height = bandSize[bz];
+
+                if (width == 0 || height == 0)
+                    continue;
+
+                int offset = bandStart[bz] * workSize + bandStart[bx];
+                int wx = x - margin + bandStart[bx], wz = y - margin + bandStart[bz];
+
+                if (bx == 1 && bz == 1)
+                {
+                    fractal.fill(workspace.front, offset, workSize, width, height, wx, wz, base, divisor, false, workspace);
+
+                    if (perturb)
+                    {
+                        perturbNoise.fill(workspace.perturbX, offset, workSize, width, height, wx, wz, base, divisor, false, workspace);
+                        perturbNoise.fill(workspace.perturbY, offset, workSize, width, height, wx, wz, base + 1, divisor, false, workspace);
+                    }
+
+                    continue;
+                }
+
+                ApronCache.Key key = workspace.apronKey.set(wx, wz, width, height, base);
+                ApronCache.Apron cached = aprons.get(key);
+
+                if (cached == null)
+                {
+                    cached = new ApronCache.Apron(width * height, perturb);
+                    fractal.fill(cached.noise, 0, width, width, height, wx, wz, base, divisor, false, workspace);
+
+                    if (perturb)
+                    {
+                        perturbNoise.fill(cached.perturbX, 0, width, width, height, wx, wz, base, divisor, false, workspace);
+                        perturbNoise.fill(cached.perturbY, 0, width, width, height, wx, wz, base + 1, divisor, false, workspace);
+                    }
+
+                    aprons.put(key, cached);
+                }
+
+                for (int row = 0; row < height; row++)
+                {
+                    int to = offset + row * workSize;
+
+                    System.arraycopy(cached.noise, row * width, workspace.front, to, width);
+
+                    if (perturb)
+                    {
+                        System.arraycopy(cached.perturbX, row * width, workspace.perturbX, to, width);
+                        System.arraycopy(cached.perturbY, row * width, workspace.perturbY, to, width);
+                    }
+                }
+            }
+        }
+    }
+
+    private void perturb(float[] src, float[] dst, float[] xNoise, float[] yNoise, int workSize)
+    {
+        int origSize = (int)Math.ceil(workSize / (2 * perturbMagnitude + 1));
+
+        for (int y = 0; y < workSize; y++)
+        {
+            int row = y * workSize;
+
+            for (int x = 0; x < workSize; x++)
+            {
+                float xn = xNoise[row + x];
+                float yn = yNoise[row + x];
+
+                int xOffset = (int)(origSize * xn * perturbMagnitude);
+                int yOffset = (int)(origSize * yn * perturbMagnitude);
+
+                int left = wrap(x - xOffset, workSize), right = wrap(x + xOffset, workSize);
+                int top = wrap(y - yOffset, workSize) * workSize, bottom = wrap(y + yOffset, workSize) * workSize;
+
+                float upper = mix(src[top + left], src[top + right], xn);
+                float lower = mix(src[bottom + left], src[bottom + right], xn);
+
+                dst[row + x] = mix(upper, lower, yn);
+            }
+        }
+    }
+
+    // jME's PerturbFilter wrap, off by one on the low side.
+    private static int wrap(int value, int size)
+    {
+        return value < 0 ? value + size - 1 : value >= size ? value - size : value;
+    }
+
+    private static float mix(float a, float b, float t)
+    {
+        return (1 - t) * a + t * b;
+    }
+
+    private void erode(float[] src, float[] dst, int workSize)
+    {
+        Arrays.fill(dst, 0, workSize * workSize, 0f);
+
+        int radius = erodeRadius;
+        float talus = erodeTalus;
+
+        for (int y = radius + 1; y < workSize - radius; y++)
+        {
+            int row = y * workSize;
+
+            for (int x = radius + 1; x < workSize - radius; x++)
+            {
+                int index = row + x;
+                float h = src[index];
+
+                float vSum = 0, hSum = 0;
+                int vCount = 0, hCount = 0;
+                boolean vStop = false, hStop = false;
+
+                for (int i = 0; i >= -radius; i--)
+                {
+                    if (!vStop)
+                    {
+                        float v = src[index + i * workSize];
+                        float vLast = src[index + (i - 1) * workSize];
+                        float vDiff = Math.abs(h - v);
+
+                        if (vDiff > talus && Math.abs(h - vLast) > talus)
+                        {
+                            vStop = true;
+                        }
+                        else if (vDiff <= talus)
+                        {
+                            vSum += v;
+                            vCount++;
+                        }
+                    }
+
+                    if (!hStop)
+                    {
+                        float v = src[index + i];
+                        float vLast = src[index + i - 1];
+                        float hDiff = Math.abs(h - v);
+
+                        if (hDiff > talus && Math.abs(h - vLast) > talus)
+                        {
+                            hStop = true;
+                        }
+                        else if (hDiff <= talus)
+                        {
+                            hSum += v;
+                            hCount++;
+                        }
+                    }
+                }
+
+                dst[index] = 0.5f * (vSum / (vCount > 0 ? vCount : 1) + hSum / (hCount > 0 ? hCount : 1));
+            }
+        }
+    }
+
+    private void smooth(float[] src, float[] dst, int workSize)
+    {
+        Arrays.fill(dst, 0, workSize * workSize, 0f);
+
+        int radius = smoothRadius;
+        float effect = smoothEffect;
+        int samples = 4 * radius * (radius + 1) + 1;
+
+        for (int y = radius; y < workSize - radius; y++)
+        {
+            int row = y * workSize;
+
+            for (int x = radius; x < workSize - radius; x++)
+            {
+                float sum = 0;
+
+                for (int dy = -radius; dy <= radius; dy++)
+                {
+                    int neighbour = row + dy * workSize + x;
+
+                    for (int dx = -radius; dx <= radius; dx++)
+                        sum += src[neighbour + dx];
+                }
+
+                dst[row + x] = effect * sum / samples + (1 - effect) * src[row + x];
+            }
+        }
+    }
+}
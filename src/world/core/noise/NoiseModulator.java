@@ -0,0 +1,9 @@
+package world.core.noise;
+
+/**
+ * Reshapes a fractal value, applied once per sample after the octaves are summed.
+ */
+public interface NoiseModulator
+{
+    float modulate(float value);
+}
@@ -0,0 +1,63 @@
+package world.core.noise;
+
+/**
+ * Scratch buffers for one thread, grown on demand and reused for every tile.
+ */
+final class NoiseWorkspace
+{
+    float[] front = new float[0], back = new float[0];
+    float[] perturbX = new float[0], perturbY = new float[0];
+
+    // per column and per row lattice data for the octave being evaluated.
+    float[] columnCoord = new float[0], columnFrac = new float[0], columnFade = new float[0];
+    int[] columnCell = new int[0];
+    float[] rowCoord = new float[0];
+
+    // per column low octave lattice position, the lattices of the regions a tile crosses, and the key to look them up by.
+    int[] columnRegion = new int[0];
+    private float[][] lattices = new float[0][];
+    final LowOctaveCache.Key regionKey = new LowOctaveCache.Key();
+
+    // where the three bands of aprons and middle start and how wide they are, and the key to look aprons up by.
+    final int[] bandStart = new int[3], bandSize = new int[3];
+    final ApronCache.Key apronKey = new ApronCache.Key();
+
+    void ensure(int workSize)
+    {
+        int area = workSize * workSize;
+
+        if (front.length < area)
+        {
+            front = new float[area];
+            back = new float[area];
+            perturbX = new float[area];
+            perturbY = new float[area];
+        }
+
+        if (columnCoord.length < workSize)
+        {
+            columnCoord = new float[workSize];
+            columnFrac = new float[workSize];
+            columnFade = new float[workSize];
+            columnCell = new int[workSize];
+            rowCoord = new float[workSize];
+            columnRegion = new int[workSize];
+        }
+    }
+
+    float[][] lattices(int count)
+    {
+        if (lattices.length < count)
+            lattices = new float[count][];
+
+        return lattices;
+    }
+
+    // swaps the front and back buffers after a filter wrote into back.
+    void flip()
+    {
+        float[] temp = front;
+        front = back;
+        back = temp;
+    }
+}
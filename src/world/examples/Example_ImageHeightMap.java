@@ -13,6 +13,7 @@ import com.jme3.terrain.heightmap.ImageBasedHeightMap;
 import com.jme3.texture.Texture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import world.core.StoredHeightmap;
 import world.core.World;
 
 public class Example_ImageHeightMap extends World
@@ -63,6 +64,28 @@ public class Example_ImageHeightMap extends World
         // doesnt exist anywhere, so we'll create it.
         String tqName = "TerrainQuad_" + (int)location.getX() + "_" + (int)location.getZ();
         
+        // use the pre-generated heightmap if one has been baked, otherwise load it from its image.
+        StoredHeightmap stored = this.getStoredHeightmap(location);
+        if (stored != null) return this.createTerrainQuad(location, tqName, stored.getHeights(), stored.getJournalPosition());
+        
+        float[] heightmap = this.generateHeightmap(location);
+        
+        if (heightmap != null)
+            tq = this.createTerrainQuad(location, tqName, heightmap);
+        
+        return tq;
+    }
+    
+    @Override
+    protected float getHeightScale()
+    {
+        // the quads keep the image's 0 - 255 heights unscaled.
+        return 1;
+    }
+    
+    @Override
+    public float[] generateHeightmap(Vector3f location)
+    {
         String imagePath = new StringBuilder()
                 .append("Textures/heightmaps/hmap_")
                 .append((int)location.getX())
@@ -77,14 +100,13 @@ public class Example_ImageHeightMap extends World
             AbstractHeightMap map = new ImageBasedHeightMap(hmapImage.getImage());
             map.load();
 
-            tq = new TerrainQuad(tqName, this.getPatchSize(), this.getBlockSize(), map.getHeightMap());
+            return map.getHeightMap();
         }
         catch (AssetNotFoundException ex)
         {
             Logger.getLogger("com.jme").log(Level.INFO, "Image not found: {0}", imagePath);
+            return null;
         }
-        
-        return tq;
     }
     
     private Material createTerrainMaterial()
@@ -7,32 +7,27 @@ import com.jme3.material.Material;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.queue.RenderQueue.ShadowMode;
 import com.jme3.scene.Node;
-import com.jme3.terrain.geomipmap.TerrainQuad;
 import com.jme3.terrain.noise.ShaderUtils;
-import com.jme3.terrain.noise.basis.FilteredBasis;
-import com.jme3.terrain.noise.filter.IterativeFilter;
-import com.jme3.terrain.noise.filter.OptimizedErode;
-import com.jme3.terrain.noise.filter.PerturbFilter;
-import com.jme3.terrain.noise.filter.SmoothFilter;
-import com.jme3.terrain.noise.fractal.FractalSum;
-import com.jme3.terrain.noise.modulator.NoiseModulator;
 import com.jme3.texture.Texture;
 import com.jme3.texture.Texture.WrapMode;
-import java.nio.FloatBuffer;
+import world.core.StoredHeightmap;
 import world.core.World;
+import world.core.noise.FractalNoise;
+import world.core.noise.NoiseEngine;
+import world.core.noise.NoiseModulator;
 
 public class Example_NoiseHeightMap extends World
 {
-    private final FilteredBasis filteredBasis;
+    private final NoiseEngine noiseEngine;
     private final Material terrainMaterial;
     
     public Example_NoiseHeightMap(SimpleApplication app, int patchSize, int blockSize, float worldHeight, int worldScale)
     {
         super(app, patchSize, blockSize, worldHeight, worldScale);
         
-        // Create a noise generator. In this example we will use the internal jme implementation,
+        // Create a noise generator. In this example we will use the world.core noise engine,
         // But in reality any noise generation method could be used.
-        this.filteredBasis = createNoiseGenerator();
+        this.noiseEngine = createNoiseGenerator();
         
         // Create a universal material to apply on all terrain.
         this.terrainMaterial = createTerrainMaterial();
@@ -73,11 +68,17 @@ public class Example_NoiseHeightMap extends World
         
         // doesnt exist anywhere, so we'll create it.
         String tqName = "TerrainQuad_" + (int)location.getX() + "_" + (int)location.getZ();
-        float[] heightmap = getHeightmap((int)location.getX(), (int)location.getZ());
-        tq = new TerrainQuad(tqName, this.getPatchSize(), this.getBlockSize(), heightmap);
+        
+        // use the pre-generated heightmap if one has been baked, otherwise generate it.
+        // stored heights may already hold some of the terrain edits, only the later ones are replayed.
+        StoredHeightmap stored = this.getStoredHeightmap(location);
+        float[] heightmap = (stored != null) ? stored.getHeights() : this.generateHeightmap(location);
+        int journalPosition = (stored != null) ? stored.getJournalPosition() : 0;
+        
+        tq = this.createTerrainQuad(location, tqName, heightmap, journalPosition);
         
         // set the scale as defined in our world settings...
-        tq.setLocalScale(new Vector3f(this.getWorldScale(), this.getWorldHeight(), this.getWorldScale()));
+        tq.setLocalScale(new Vector3f(this.getWorldScale(), this.getHeightScale(), this.getWorldScale()));
         
         // set the position of the new terrain, taking world scale int account.
         Vector3f pos = this.fromTerrainLocation(location);
@@ -92,48 +93,52 @@ public class Example_NoiseHeightMap extends World
         return tq;
     }
     
-    private float[] getHeightmap(int x, int z)
+    @Override
+    public long getGeneratorFingerprint()
     {
-        FloatBuffer buffer = this.filteredBasis.getBuffer(x * (this.getBlockSize() - 1), z * (this.getBlockSize() - 1), 0, this.getBlockSize());
-        return buffer.array();
+        // changes with any of the noise settings, so tiles and snapshots made with others aren't restored.
+        return this.noiseEngine.getFingerprint();
     }
     
-    private FilteredBasis createNoiseGenerator()
+    @Override
+    public float[] generateHeightmap(Vector3f location)
     {
-        FractalSum base = new FractalSum();
+        // the noise alone, no quad or collision shape is needed for it.
+        int x = (int)location.getX(), z = (int)location.getZ();
+        
+        float[] heightmap = new float[this.getBlockSize() * this.getBlockSize()];
+        this.noiseEngine.getBuffer(heightmap, x * (this.getBlockSize() - 1), z * (this.getBlockSize() - 1), 0, this.getBlockSize());
+        return heightmap;
+    }
+    
+    private NoiseEngine createNoiseGenerator()
+    {
+        FractalNoise base = new FractalNoise();
         base.setRoughness(0.7f);
         base.setFrequency(1.0f);
         base.setAmplitude(1.0f);
         base.setLacunarity(3.12f);
         base.setOctaves(8);
-        base.setScale(0.02125f);
+        // ALIGNED divides by the tile size rather than the larger filtered area, so a smaller
+        // scale keeps features the size they were with the jME FilteredBasis.
+        base.setScale(0.015f);
         base.addModulator(new NoiseModulator()
             {
-                @Override public float value(float... in) 
+                @Override public float modulate(float value) 
                 {
-                    return ShaderUtils.clamp(in[0] * 0.5f + 0.5f, 0, 1);
+                    return ShaderUtils.clamp(value * 0.5f + 0.5f, 0, 1);
                 }
             });
         
-        FilteredBasis ground = new FilteredBasis(base);
-        PerturbFilter perturb = new PerturbFilter();
-        perturb.setMagnitude(0.119f);
-        
-        OptimizedErode therm = new OptimizedErode();
-        therm.setRadius(5);
-        therm.setTalus(0.011f);
-        
-        SmoothFilter smooth = new SmoothFilter();
-        smooth.setRadius(1);
-        smooth.setEffect(0.7f);
-        
-        IterativeFilter iterate = new IterativeFilter();
-        iterate.addPreFilter(perturb);
-        iterate.addPostFilter(smooth);
-        iterate.setFilter(therm);
-        iterate.setIterations(1);
+        // ALIGNED generates every tile from the same world grid, so neighbours match exactly along their edges.
+        // COMPATIBLE would give the same terrain the jME FilteredBasis did with these settings, seams included.
+        NoiseEngine ground = new NoiseEngine(base, NoiseEngine.Mode.ALIGNED);
+        ground.setPerturb(0.119f);
+        ground.setErode(5, 0.011f, 1);
+        ground.setSmooth(1, 0.7f);
         
-        ground.addPreFilter(iterate);
+        // the filters need samples beyond each tile's edges, generate those once and share them with the neighbours.
+        ground.setApronCache(256);
         
         return ground;
     }